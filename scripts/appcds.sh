@@ -0,0 +1,23 @@
+#!/bin/sh
+# Builds the project and dumps an AppCDS (class-data-sharing) archive for the Shell entry point.
+# The archive is recorded from a real session that renders once, so it covers the image,
+# matching and output classes as well as the startup path.
+#
+# Usage: scripts/appcds.sh <image> [out-dir]
+# Then run: java -XX:SharedArchiveFile=<out-dir>/shell.jsa -cp <out-dir>/shell.jar ascii_art.Shell <image>
+# (CDS only archives classes loaded from jars, hence the jar.)
+set -e
+
+IMAGE=${1:?usage: appcds.sh <image> [out-dir]}
+OUT=${2:-out/appcds}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+
+mkdir -p "$OUT/classes"
+javac -d "$OUT/classes" $(find "$ROOT/src" -name '*.java')
+jar cf "$OUT/shell.jar" -C "$OUT/classes" .
+
+printf 'asciiArt\nexit\n' | java -XX:ArchiveClassesAtExit="$OUT/shell.jsa" \
+    -cp "$OUT/shell.jar" ascii_art.Shell "$IMAGE" > /dev/null
+
+echo "Archive written to $OUT/shell.jsa"
+echo "Benchmark: java -cp $OUT/shell.jar benchmark.StartupBenchmark $IMAGE 5 $OUT/shell.jsa"
@@ -0,0 +1,303 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import ascii_output.ColoredAsciiOutput;
+import image.Image;
+import image.SubImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The AdaptiveResolutionRenderer class renders ASCII art within a time budget.
+ * It estimates the cost of every legal power-of-two resolution from the image size and the
+ * throughput measured on previous renders, and renders the highest resolution that fits the budget.
+ * The cost of a resolution is that of rendering it plus that of delivering it to the output, which
+ * for a console or a file can take longer than the render itself; both are measured on every render.
+ * In progressive mode it first delivers the coarsest resolution and then refines it while time remains;
+ * otherwise only the final render is delivered. The cost of a render is measured on a fresh brightness
+ * pass, never on cached sub-images, so repeated renders at one resolution do not bias the model low.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class AdaptiveResolutionRenderer {
+
+    // Constants
+    private static final double DEFAULT_NANOS_PER_PIXEL = 20.0; // Initial guess, before any render
+    private static final double DEFAULT_NANOS_PER_TILE = 2500.0; // Initial guess, before any render
+    private static final double DEFAULT_DELIVERY_NANOS_PER_TILE = 2500.0; // Guess, before any delivery
+    private static final double SMOOTHING = 0.5; // Weight of a new measurement of the same resolution
+    private static final long NANOS_IN_MILLI = 1_000_000L; // Nanoseconds in a millisecond
+
+    // Fields
+    private final Image image; // The padded input image
+    private final SubImgCharMatcher matcher; // The matcher for matching brightness to characters
+    private final SubImageManager subImageManager; // The manager for handling sub-images
+    private final int minResolution; // The smallest legal resolution
+    private final int maxResolution; // The largest legal resolution
+    private final Map<Integer, Double> measuredNanos; // Smoothed measured cost per resolution
+    private double nanosPerPixel; // Estimated cost of scanning one pixel
+    private double nanosPerTile; // Estimated cost of extracting and matching one tile
+    private final Map<Integer, Double> deliveryNanos; // Smoothed measured delivery cost per resolution
+    private double deliveryFixedNanos; // Estimated cost of a delivery regardless of size, e.g. opening a file
+    private double deliveryNanosPerTile; // Estimated cost of delivering one tile to the output
+    private AsciiOutput deliveryOutput; // The output the delivery cost was measured on, or null
+
+    /**
+     * The outcome of a budgeted render.
+     */
+    public static class Result {
+        private final int resolution;
+        private final long elapsedNanos;
+
+        private Result(int resolution, long elapsedNanos) {
+            this.resolution = resolution;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The resolution of the final ASCII art.
+         */
+        public int getResolution() {
+            return resolution;
+        }
+
+        /**
+         * @return The total time spent, in milliseconds, including coarse renders and deliveries.
+         */
+        public double getElapsedMillis() {
+            return (double) elapsedNanos / NANOS_IN_MILLI;
+        }
+    }
+
+    /**
+     * Constructs an AdaptiveResolutionRenderer for the given padded image.
+     *
+     * @param paddedImage     The padded image to render.
+     * @param matcher         The matcher for matching brightness to characters.
+     * @param subImageManager The manager for handling sub-images of the padded image.
+     */
+    public AdaptiveResolutionRenderer(Image paddedImage, SubImgCharMatcher matcher,
+                                      SubImageManager subImageManager) {
+        this.image = paddedImage;
+        this.matcher = matcher;
+        this.subImageManager = subImageManager;
+        this.minResolution = Math.max(1, paddedImage.getWidth() / paddedImage.getHeight());
+        this.maxResolution = paddedImage.getWidth();
+        this.measuredNanos = new HashMap<>();
+        this.nanosPerPixel = DEFAULT_NANOS_PER_PIXEL;
+        this.nanosPerTile = DEFAULT_NANOS_PER_TILE;
+        this.deliveryNanos = new HashMap<>();
+        this.deliveryNanosPerTile = DEFAULT_DELIVERY_NANOS_PER_TILE;
+    }
+
+    /**
+     * Renders the image at the highest resolution, up to a limit, estimated to fit in the budget,
+     * optionally coloring each character by its tile's average color. The limit lets a caller bound
+     * the memory of the render before the resolution is chosen.
+     *
+     * @param budgetMillis     The time budget in milliseconds.
+     * @param output           The output the art is delivered to; a {@link ColoredAsciiOutput} if colored.
+     * @param progressive      Whether to deliver the coarsest resolution first and refine it.
+     * @param colored          Whether the art is delivered with the tile colors of its resolution.
+     * @param resolutionLimit  The highest resolution that may be chosen.
+     * @return The resolution of the final art and the time spent.
+     */
+    public Result render(long budgetMillis, AsciiOutput output, boolean progressive, boolean colored,
+                         int resolutionLimit) {
+        // Glyphs are rasterized once, on first use after the charset changes. That is a cost of the
+        // charset rather than of any resolution, so it is paid before the budget starts and kept out
+        // of the calibration render.
+        matcher.getCharByImageBrightness(0);
+        long start = System.nanoTime();
+        long budgetNanos = toNanos(budgetMillis);
+        int resolution = minResolution;
+        char[][] chars = null;
+        boolean delivered = false;
+        if (output != deliveryOutput) {
+            // Outputs differ widely in cost, so a delivery measured on another one says nothing.
+            deliveryOutput = output;
+            deliveryNanos.clear();
+            deliveryFixedNanos = 0;
+            deliveryNanosPerTile = DEFAULT_DELIVERY_NANOS_PER_TILE;
+        }
+        // Without any measurement the model is only a guess, so the coarsest render doubles as calibration.
+        if (progressive || measuredNanos.isEmpty()) {
+            chars = renderAt(resolution);
+            if (progressive) {
+                deliver(output, chars, resolution, colored);
+                delivered = true;
+            }
+        }
+        int target = chooseResolution(budgetNanos - (System.nanoTime() - start), resolutionLimit);
+        if (chars == null || target > resolution) {
+            resolution = target;
+            chars = renderAt(resolution);
+            delivered = false;
+        }
+        if (!delivered) {
+            deliver(output, chars, resolution, colored);
+        }
+        return new Result(resolution, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the highest legal resolution, up to a limit, whose estimated cost fits in the remaining
+     * time, or the lowest legal resolution if none fits.
+     *
+     * @param remainingNanos  The remaining time in nanoseconds.
+     * @param resolutionLimit The highest resolution that may be chosen.
+     * @return The chosen resolution.
+     */
+    private int chooseResolution(long remainingNanos, int resolutionLimit) {
+        int chosen = minResolution;
+        for (int res = minResolution; res <= Math.min(maxResolution, resolutionLimit); res *= 2) {
+            if (estimateNanos(res) <= remainingNanos) {
+                chosen = res;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Estimates the cost of rendering at the given resolution and delivering the result.
+     * A resolution that was already rendered uses its measured render cost, any other resolution uses
+     * the per-pixel and per-tile throughput model. The delivery cost is a fixed cost plus a cost per tile.
+     *
+     * @param resolution The resolution.
+     * @return The estimated cost in nanoseconds.
+     */
+    private double estimateNanos(int resolution) {
+        double delivery = deliveryFixedNanos + deliveryNanosPerTile * tileCount(resolution);
+        Double measured = measuredNanos.get(resolution);
+        if (measured != null) {
+            return measured + delivery;
+        }
+        return nanosPerPixel * pixelCount() + nanosPerTile * tileCount(resolution) + delivery;
+    }
+
+    /**
+     * Renders at the given resolution and feeds the measured time back into the estimates.
+     * The brightness is always computed afresh, so that every measurement is of the same, uncached work.
+     *
+     * @param resolution The resolution.
+     * @return The ASCII art.
+     */
+    private char[][] renderAt(int resolution) {
+        long start = System.nanoTime();
+        char[][] chars = new AsciiArtAlgorithm(image, resolution, matcher.getCharSet(), matcher,
+                subImageManager).run(subImageManager.getBrightnessGrid(resolution));
+        recordMeasurement(resolution, System.nanoTime() - start);
+        return chars;
+    }
+
+    /**
+     * Delivers ASCII art to the output, with the tile colors of its resolution if colored, and feeds
+     * the measured time back into the delivery cost.
+     *
+     * @param output     The output.
+     * @param chars      The ASCII art.
+     * @param resolution The resolution of the art.
+     * @param colored    Whether to deliver the tile colors.
+     */
+    private void deliver(AsciiOutput output, char[][] chars, int resolution, boolean colored) {
+        long start = System.nanoTime();
+        if (colored) {
+            Color[][] tileColors = subImageManager.getColorGrid(resolution);
+            ((ColoredAsciiOutput) output).out(chars, tileColors);
+        } else {
+            output.out(chars);
+        }
+        long nanos = System.nanoTime() - start;
+        Double previous = deliveryNanos.get(resolution);
+        deliveryNanos.put(resolution, previous == null ? nanos : previous + SMOOTHING * (nanos - previous));
+        double[] line = fitLine(deliveryNanos, deliveryNanosPerTile);
+        deliveryFixedNanos = line[0];
+        deliveryNanosPerTile = line[1];
+    }
+
+    /**
+     * Converts a budget to nanoseconds, saturating instead of overflowing.
+     *
+     * @param budgetMillis The budget in milliseconds.
+     * @return The budget in nanoseconds.
+     */
+    private static long toNanos(long budgetMillis) {
+        try {
+            return Math.multiplyExact(budgetMillis, NANOS_IN_MILLI);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Updates the cost model with a measured render.
+     * The pixel count is fixed for the image, so the cost is linear in the tile count.
+     *
+     * @param resolution The rendered resolution.
+     * @param nanos      The measured cost in nanoseconds.
+     */
+    private void recordMeasurement(int resolution, long nanos) {
+        Double previous = measuredNanos.get(resolution);
+        measuredNanos.put(resolution, previous == null ? nanos : previous + SMOOTHING * (nanos - previous));
+        double[] line = fitLine(measuredNanos, nanosPerTile);
+        nanosPerPixel = line[0] / pixelCount();
+        nanosPerTile = line[1];
+    }
+
+    /**
+     * Fits a cost that is linear in the tile count to measured costs. Once two resolutions were
+     * measured the line is fitted to all of them by least squares; before that the single measurement,
+     * usually of the coarsest resolution, only corrects the fixed part of the cost.
+     *
+     * @param measured     The smoothed measured cost of each resolution, in nanoseconds.
+     * @param currentSlope The current estimate of the cost per tile.
+     * @return The fixed cost and the cost per tile, in nanoseconds.
+     */
+    private double[] fitLine(Map<Integer, Double> measured, double currentSlope) {
+        if (measured.size() == 1) {
+            Map.Entry<Integer, Double> only = measured.entrySet().iterator().next();
+            return new double[]{Math.max(0, only.getValue() - currentSlope * tileCount(only.getKey())),
+                    currentSlope};
+        }
+        double meanTiles = 0;
+        double meanNanos = 0;
+        for (Map.Entry<Integer, Double> entry : measured.entrySet()) {
+            meanTiles += tileCount(entry.getKey());
+            meanNanos += entry.getValue();
+        }
+        meanTiles /= measured.size();
+        meanNanos /= measured.size();
+        double covariance = 0;
+        double variance = 0;
+        for (Map.Entry<Integer, Double> entry : measured.entrySet()) {
+            double tileDelta = tileCount(entry.getKey()) - meanTiles;
+            covariance += tileDelta * (entry.getValue() - meanNanos);
+            variance += tileDelta * tileDelta;
+        }
+        // Noise between close resolutions can make the fitted cost fall with the size; a line that says
+        // larger renders are free would pick the finest resolution, so keep the previous estimate then.
+        double slope = covariance > 0 ? covariance / variance : currentSlope;
+        return new double[]{Math.max(0, meanNanos - slope * meanTiles), slope};
+    }
+
+    /**
+     * @return The number of pixels of the padded image.
+     */
+    private long pixelCount() {
+        return (long) image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * Returns the number of tiles the padded image is divided into at a resolution.
+     *
+     * @param resolution The resolution.
+     * @return The number of tiles.
+     */
+    private long tileCount(int resolution) {
+        int squareSize = image.getWidth() / resolution;
+        return (long) resolution * (image.getHeight() / squareSize);
+    }
+}
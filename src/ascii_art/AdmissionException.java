@@ -0,0 +1,20 @@
+package ascii_art;
+
+/**
+ * The AdmissionException class represents an exception that is thrown
+ * when a render is rejected by the RenderAdmissionController.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class AdmissionException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs an AdmissionException with the specified detail message.
+     *
+     * @param message the detail message
+     */
+    public AdmissionException(String message) {
+        super(message);
+    }
+}
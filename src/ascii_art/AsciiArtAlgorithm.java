@@ -49,6 +49,9 @@ public class AsciiArtAlgorithm {
      */
     public char[][] run() {
 
+        if (subImageManager.isTileMajorLayout()) {
+            return run(subImageManager.getBrightnessGrid(resolution));
+        }
         Image[][] subImages = subImageManager.getSubImages(resolution); // Use the instance method
         int numRows = image.getHeight() / (image.getWidth() / resolution);
 
@@ -61,4 +64,20 @@ public class AsciiArtAlgorithm {
         }
         return chars;
     }
+
+    /**
+     * Runs the algorithm on tile brightness that was already computed, e.g. in the background.
+     *
+     * @param brightness The brightness of every tile, as {@link SubImageManager#getBrightnessGrid} returns it.
+     * @return A 2D array of characters representing the ASCII art.
+     */
+    public char[][] run(double[][] brightness) {
+        char[][] chars = new char[brightness.length][resolution];
+        for (int row = 0; row < brightness.length; row++) {
+            for (int col = 0; col < resolution; col++) {
+                chars[row][col] = matcher.getCharByImageBrightness(brightness[row][col]);
+            }
+        }
+        return chars;
+    }
 }
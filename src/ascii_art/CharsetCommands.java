@@ -0,0 +1,207 @@
+package ascii_art;
+
+import image_char_matching.SubImgCharMatcher;
+
+import java.util.TreeSet;
+
+/**
+ * The CharsetCommands class handles the shell commands that change and print the character set:
+ * 'add' and 'remove', of printable ASCII or of Unicode glyphs given directly or as U+XXXX code
+ * points, and 'chars'.
+ *
+ * @ Author: Hadas Elezra
+ */
+class CharsetCommands {
+
+    // Constants
+    private static final char MIN_CHAR = 32; // Minimum ASCII value for characters.
+    private static final char MAX_CHAR = 127; // Maximum ASCII value for characters.
+    private static final String CODE_POINT = "U\\+[0-9A-Fa-f]{4}"; // A BMP code point, e.g. U+2588
+    private static final int CODE_POINT_LENGTH = 6; // Length of a code point argument, e.g. U+2588
+
+    // Fields
+    private final SubImgCharMatcher charMatcher; // The matcher whose character set the commands change
+
+    /**
+     * Constructs a CharsetCommands.
+     *
+     * @param charMatcher The matcher whose character set the commands change.
+     */
+    CharsetCommands(SubImgCharMatcher charMatcher) {
+        this.charMatcher = charMatcher;
+    }
+
+    /**
+     * Handles the 'chars' command: returns the character set, sorted.
+     *
+     * @return The characters, each followed by a space.
+     */
+    String sortedChars() {
+        TreeSet<Character> sortedSet = new TreeSet<>(charMatcher.getCharSet());
+        StringBuilder line = new StringBuilder();
+        for (char c : sortedSet) {
+            line.append(c).append(' ');
+        }
+        return line.toString();
+    }
+
+    /**
+     * Handles the 'add' command to add characters to the character set.
+     *
+     * @param arguments The arguments for the 'add' command.
+     * @throws CommandException If the format is incorrect.
+     */
+    void add(String arguments) throws CommandException {
+        if (arguments.isEmpty()) {
+            throw new CommandException("Did not add due to incorrect format.");
+        }
+        if (arguments.equals("all")) {
+            for (char c = MIN_CHAR; c <= MAX_CHAR; c++) {
+                charMatcher.addChar(c);
+            }
+        } else if (arguments.equals("space")) {
+            charMatcher.addChar(' ');
+        } else if (arguments.length() == 1) {
+            char c = arguments.charAt(0);
+            if ((c >= MIN_CHAR && c < MAX_CHAR) || isUnicodeGlyph(c)) {
+                charMatcher.addChar(c);
+            } else {
+                throw new CommandException("Did not add due to incorrect format.");
+            }
+        } else if (arguments.matches(".-.")) {
+            char start = arguments.charAt(0);
+            char end = arguments.charAt(2);
+            if (start >= MIN_CHAR && end >= MIN_CHAR && start < MAX_CHAR && end < MAX_CHAR) {
+                if (start <= end) {
+                    for (char c = start; c <= end; c++) {
+                        charMatcher.addChar(c);
+                    }
+                } else {
+                    for (char c = start; c >= end; c--) {
+                        charMatcher.addChar(c);
+                    }
+                }
+            } else if (isUnicodeGlyph(start) && isUnicodeGlyph(end)) {
+                addUnicodeRange(start, end);
+            } else {
+                throw new CommandException("Did not add due to incorrect format.");
+            }
+        } else if (arguments.matches(CODE_POINT + "(-" + CODE_POINT + ")?")) {
+            char start = parseCodePoint(arguments);
+            char end = arguments.length() > CODE_POINT_LENGTH ?
+                    parseCodePoint(arguments.substring(CODE_POINT_LENGTH + 1)) : start;
+            if (!addUnicodeRange(start, end)) {
+                throw new CommandException("Did not add due to incorrect format.");
+            }
+        } else {
+            throw new CommandException("Did not add due to incorrect format.");
+        }
+    }
+
+    /**
+     * Handles the 'remove' command to remove characters from the character set.
+     *
+     * @param arguments The arguments for the 'remove' command.
+     * @throws CommandException If the format is incorrect.
+     */
+    void remove(String arguments) throws CommandException {
+        if (arguments.isEmpty()) {
+            throw new CommandException("Did not remove due to incorrect format.");
+        }
+        if (arguments.equals("all")) {
+            Character[] charArray = charMatcher.getCharSet().toArray(new Character[0]);
+            for (Character c : charArray) {
+                charMatcher.removeChar(c);
+            }
+        } else if (arguments.equals("space")) {
+            charMatcher.removeChar(' ');
+        } else if (arguments.length() == 1) {
+            char c = arguments.charAt(0);
+            if ((c >= MIN_CHAR && c <= MAX_CHAR) || isUnicodeGlyph(c)) {
+                charMatcher.removeChar(c);
+            } else {
+                throw new CommandException("Did not remove due to incorrect format.");
+            }
+        } else if (arguments.matches(".-.")) {
+            char start = arguments.charAt(0);
+            char end = arguments.charAt(2);
+            if (start >= MIN_CHAR && end >= MIN_CHAR && start <= MAX_CHAR && end <= MAX_CHAR) {
+                if (start <= end) {
+                    for (char c = start; c <= end; c++) {
+                        charMatcher.removeChar(c);
+                    }
+                } else {
+                    for (char c = start; c >= end; c--) {
+                        charMatcher.removeChar(c);
+                    }
+                }
+            } else if (isUnicodeGlyph(start) && isUnicodeGlyph(end)) {
+                removeUnicodeRange(start, end);
+            } else {
+                throw new CommandException("Did not remove due to incorrect format.");
+            }
+        } else if (arguments.matches(CODE_POINT + "(-" + CODE_POINT + ")?")) {
+            char start = parseCodePoint(arguments);
+            char end = arguments.length() > CODE_POINT_LENGTH ?
+                    parseCodePoint(arguments.substring(CODE_POINT_LENGTH + 1)) : start;
+            removeUnicodeRange(start, end);
+        } else {
+            throw new CommandException("Did not remove due to incorrect format.");
+        }
+    }
+
+    /**
+     * Returns whether a character beyond ASCII can be added to the character set: a defined,
+     * printable character of the Basic Multilingual Plane.
+     *
+     * @param c The character.
+     * @return Whether the character can be added.
+     */
+    private static boolean isUnicodeGlyph(char c) {
+        return c > MAX_CHAR && Character.isDefined(c) && !Character.isISOControl(c) &&
+                !Character.isSurrogate(c) && !Character.isWhitespace(c) &&
+                Character.getType(c) != Character.PRIVATE_USE;
+    }
+
+    /**
+     * Adds the characters of a range, in either order, that can be added to the character set:
+     * printable ASCII, or Unicode glyphs as {@link #isUnicodeGlyph} defines them.
+     * The glyphs are rasterized in one parallel batch on the next render.
+     *
+     * @param start The first character of the range.
+     * @param end   The last character of the range.
+     * @return Whether any character of the range could be added.
+     */
+    private boolean addUnicodeRange(char start, char end) {
+        boolean added = false;
+        for (int c = Math.min(start, end); c <= Math.max(start, end); c++) {
+            if ((c >= MIN_CHAR && c < MAX_CHAR) || isUnicodeGlyph((char) c)) {
+                charMatcher.addChar((char) c);
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes the characters of a range, in either order, from the character set.
+     *
+     * @param start The first character of the range.
+     * @param end   The last character of the range.
+     */
+    private void removeUnicodeRange(char start, char end) {
+        for (int c = Math.min(start, end); c <= Math.max(start, end); c++) {
+            charMatcher.removeChar((char) c);
+        }
+    }
+
+    /**
+     * Parses a code point argument of the form U+XXXX.
+     *
+     * @param codePoint The argument, starting with the code point.
+     * @return The character of the code point.
+     */
+    private static char parseCodePoint(String codePoint) {
+        return (char) Integer.parseInt(codePoint.substring(2, CODE_POINT_LENGTH), 16);
+    }
+}
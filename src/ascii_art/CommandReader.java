@@ -0,0 +1,16 @@
+package ascii_art;
+
+import java.io.IOException;
+
+/**
+ * A source of shell commands.
+ *
+ * @ Author: Hadas Elezra
+ */
+interface CommandReader {
+    /**
+     * @return The next command, or null if there are no more commands.
+     * @throws IOException If the command cannot be read.
+     */
+    String readLine() throws IOException;
+}
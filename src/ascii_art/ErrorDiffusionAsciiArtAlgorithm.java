@@ -0,0 +1,248 @@
+package ascii_art;
+
+import image.SubImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ErrorDiffusionAsciiArtAlgorithm class converts an image into ASCII art with Floyd-Steinberg
+ * error diffusion on the tile brightness grid. The difference between a tile's brightness and the
+ * brightness of the character chosen for it is carried to the neighbouring tiles, which removes the
+ * banding that independent matching produces with small character sets.
+ * <p>
+ * Error diffusion is sequential, but a tile only depends on the tile to its left and on the three
+ * tiles above it. Rows are therefore pipelined across threads: each row runs two tiles behind the
+ * row above it, so all rows of the grid advance at once along a wavefront. The rows run on a pool
+ * of threads shared by all renders, and a row that catches up with the row above parks until the row
+ * above is a batch of tiles ahead, instead of spinning. If a row fails, every parked row is woken and
+ * gives up, so a failed render does not leave threads parked forever.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class ErrorDiffusionAsciiArtAlgorithm {
+
+    // Constants
+    private static final double RIGHT_WEIGHT = 7.0 / 16; // Share of the error carried to the right
+    private static final double BELOW_LEFT_WEIGHT = 3.0 / 16; // Share carried below and to the left
+    private static final double BELOW_WEIGHT = 5.0 / 16; // Share carried below
+    private static final double BELOW_RIGHT_WEIGHT = 1.0 / 16; // Share carried below and to the right
+    private static final int WAVEFRONT_LAG = 2; // How many tiles a row trails the row above it
+    private static final int WAKE_BATCH = 64; // Tiles the row above must gain before a parked row wakes
+    // Threads the rows run on. Cached rather than fixed, so that every row task of every render starts
+    // at once: a task waits on the task of the row above, which must not be queued behind it.
+    private static final ExecutorService ROW_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "error-diffusion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Fields
+    private final int resolution; // The resolution for dividing the image into sub-images
+    private final SubImgCharMatcher matcher; // The matcher for matching brightness to characters
+    private final SubImageManager subImageManager; // The manager for handling sub-images
+    private final int numThreads; // The number of threads the rows are pipelined across
+
+    /**
+     * Constructs an ErrorDiffusionAsciiArtAlgorithm that uses all available processors.
+     *
+     * @param resolution      The resolution for dividing the image into sub-images.
+     * @param matcher         The matcher for matching brightness to characters.
+     * @param subImageManager The manager for handling sub-images of the padded image.
+     */
+    public ErrorDiffusionAsciiArtAlgorithm(int resolution, SubImgCharMatcher matcher,
+                                           SubImageManager subImageManager) {
+        this(resolution, matcher, subImageManager, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an ErrorDiffusionAsciiArtAlgorithm with the given number of threads.
+     *
+     * @param resolution      The resolution for dividing the image into sub-images.
+     * @param matcher         The matcher for matching brightness to characters.
+     * @param subImageManager The manager for handling sub-images of the padded image.
+     * @param numThreads      The number of threads the rows are pipelined across.
+     */
+    public ErrorDiffusionAsciiArtAlgorithm(int resolution, SubImgCharMatcher matcher,
+                                           SubImageManager subImageManager, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.resolution = resolution;
+        this.matcher = matcher;
+        this.subImageManager = subImageManager;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Runs the algorithm.
+     *
+     * @return A 2D array of characters representing the ASCII art.
+     */
+    public char[][] run() {
+        double[][] brightness = subImageManager.getBrightnessGrid(resolution);
+        int numRows = brightness.length;
+        char[][] chars = new char[numRows][resolution];
+        // One column of padding on each side, so the error never needs a bounds check.
+        double[][] error = new double[numRows + 1][resolution + 2];
+        Wavefront wavefront = new Wavefront(numRows);
+
+        // Bring the matcher up to date before sharing it between threads.
+        matcher.getCharByImageBrightness(0);
+
+        int threads = Math.min(numThreads, numRows);
+        Future<?>[] workers = new Future<?>[threads];
+        for (int t = 0; t < threads; t++) {
+            int firstRow = t;
+            workers[t] = ROW_EXECUTOR.submit(() -> {
+                try {
+                    for (int row = firstRow; row < numRows; row += threads) {
+                        if (!diffuseRow(row, brightness, error, chars, wavefront)) {
+                            return;
+                        }
+                    }
+                } catch (RuntimeException | Error e) {
+                    wavefront.fail();
+                    throw e;
+                }
+            });
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(wavefront, workers);
+                throw new IllegalStateException("Interrupted while diffusing error", e);
+            } catch (ExecutionException e) {
+                cancel(wavefront, workers);
+                throw new IllegalStateException("Failed to diffuse error", e.getCause());
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Stops a failed render: wakes every parked row so that it gives up, and cancels the row tasks
+     * that have not finished.
+     *
+     * @param wavefront The progress of every row.
+     * @param workers   The row tasks of the render.
+     */
+    private static void cancel(Wavefront wavefront, Future<?>[] workers) {
+        wavefront.fail();
+        for (Future<?> worker : workers) {
+            worker.cancel(true);
+        }
+    }
+
+    /**
+     * The progress of every row, and the threads parked waiting on it.
+     */
+    private static class Wavefront {
+        private final AtomicIntegerArray progress; // The number of completed tiles of each row
+        private final AtomicIntegerArray awaited; // The progress a parked thread waits for, per row
+        private final AtomicReferenceArray<Thread> waiters; // The thread parked on each row, or null
+        private volatile boolean failed; // Whether a row failed, so that no row will complete
+
+        private Wavefront(int numRows) {
+            this.progress = new AtomicIntegerArray(numRows);
+            this.awaited = new AtomicIntegerArray(numRows);
+            this.waiters = new AtomicReferenceArray<>(numRows);
+        }
+
+        /**
+         * Waits until a row has completed at least the given number of tiles. If it has not, the
+         * calling thread parks until the row is a batch of tiles further ahead, or complete, or until
+         * some row failed.
+         *
+         * @param row      The row waited on.
+         * @param needed   The number of tiles needed.
+         * @param rowWidth The number of tiles in a row.
+         * @return Whether the row got far enough; false if the render failed and the caller should stop.
+         */
+        private boolean await(int row, int needed, int rowWidth) {
+            if (progress.get(row) >= needed) {
+                return true;
+            }
+            int target = Math.min(needed + WAKE_BATCH, rowWidth);
+            awaited.set(row, target);
+            waiters.set(row, Thread.currentThread());
+            // The row's thread sets its progress before reading the waiter, and this thread sets the
+            // waiter before reading the progress, so one of them always sees the other. The same holds
+            // for the failed flag, which fail() sets before reading the waiters.
+            while (progress.get(row) < target && !failed) {
+                LockSupport.park(this);
+            }
+            waiters.set(row, null);
+            return progress.get(row) >= needed;
+        }
+
+        /**
+         * Marks the render failed and wakes every parked thread, so that none waits for a row that
+         * will never complete.
+         */
+        private void fail() {
+            failed = true;
+            for (int row = 0; row < waiters.length(); row++) {
+                Thread waiter = waiters.get(row);
+                if (waiter != null) {
+                    LockSupport.unpark(waiter);
+                }
+            }
+        }
+
+        /**
+         * Records the progress of a row, and wakes the thread waiting on it once it has gone far enough.
+         *
+         * @param row       The row.
+         * @param completed The number of completed tiles of the row.
+         */
+        private void advance(int row, int completed) {
+            progress.set(row, completed);
+            Thread waiter = waiters.get(row);
+            if (waiter != null && completed >= awaited.get(row)) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * Quantizes one row, waiting for the row above to stay ahead of it.
+     * Only this row writes to the row below it, and the error carried to the right stays in a local
+     * variable, so no two threads ever write the same cell.
+     *
+     * @param row        The row to quantize.
+     * @param brightness The tile brightness grid.
+     * @param error      The diffused error, offset by one column.
+     * @param chars      The output characters.
+     * @param wavefront  The progress of every row.
+     * @return Whether the row was completed; false if the render failed while it waited.
+     */
+    private boolean diffuseRow(int row, double[][] brightness, double[][] error, char[][] chars,
+                            Wavefront wavefront) {
+        double carried = 0;
+        for (int col = 0; col < resolution; col++) {
+            if (row > 0 && !wavefront.await(row - 1, Math.min(col + WAVEFRONT_LAG, resolution), resolution)) {
+                return false;
+            }
+            double wanted = brightness[row][col] + error[row][col + 1] + carried;
+            char c = matcher.getCharByImageBrightness(wanted);
+            double quantizationError = wanted - matcher.getCharBrightness(c);
+            chars[row][col] = c;
+
+            carried = quantizationError * RIGHT_WEIGHT;
+            error[row + 1][col] += quantizationError * BELOW_LEFT_WEIGHT;
+            error[row + 1][col + 1] += quantizationError * BELOW_WEIGHT;
+            error[row + 1][col + 2] += quantizationError * BELOW_RIGHT_WEIGHT;
+            wavefront.advance(row, col + 1);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,192 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
+import image.ImagePaddingManager;
+import image_char_matching.SubImgCharMatcher;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The FusedAsciiArtEngine class converts an image file into ASCII art in a single pass, for the common
+ * case of the default pipeline (load, pad, divide, match, output).
+ * The image is decoded once into its compact raster and then walked one scanline at a time: padding
+ * is applied by offsets rather than copied, each scanline's grey levels are added to the sums of the
+ * tiles it crosses, and as soon as a row of tiles is complete it is matched and written to the output.
+ * No Color objects, padded copy or sub-images are made. The sums are accumulated in the same order as
+ * the staged pipeline's, so the ASCII art is identical to {@link AsciiArtAlgorithm}'s.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class FusedAsciiArtEngine {
+
+    // Constants
+    private static final int MAX_RGB = 255; // Maximum value for RGB
+    private static final double RED_COEFFICIENT = 0.2126; // Coefficient for red channel
+    private static final double GREEN_COEFFICIENT = 0.7152; // Coefficient for green channel
+    private static final double BLUE_COEFFICIENT = 0.0722; // Coefficient for blue channel
+    private static final double PADDING_GREY = MAX_RGB * RED_COEFFICIENT + MAX_RGB * GREEN_COEFFICIENT +
+            MAX_RGB * BLUE_COEFFICIENT; // Grey level of the white padding
+    private static final int DEFAULT_RESOLUTION = 128; // Resolution of the command-line conversion
+    private static final String DEFAULT_FONT = "Courier New"; // Font of the command-line HTML output
+
+    // Fields
+    private final SubImgCharMatcher matcher; // The matcher for matching brightness to characters
+
+    /**
+     * Constructs a FusedAsciiArtEngine.
+     *
+     * @param matcher The matcher for matching brightness to characters.
+     */
+    public FusedAsciiArtEngine(SubImgCharMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Converts an image file into ASCII art. A {@link StreamingAsciiOutput} receives each row of the
+     * art as soon as it is matched; any other output receives the whole art at the end.
+     *
+     * @param filename   The image file.
+     * @param resolution The number of characters in a row, a legal power of two for the padded image.
+     * @param output     The output the art is delivered to, or null to only return it.
+     * @return A 2D array of characters representing the ASCII art.
+     * @throws IOException              If the image cannot be read.
+     * @throws IllegalArgumentException If the resolution is not legal for the image.
+     */
+    public char[][] run(String filename, int resolution, AsciiOutput output) throws IOException {
+        BufferedImage image = ImageIO.read(new File(filename));
+        if (image == null) {
+            throw new IOException("Unsupported image: " + filename);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int paddedWidth = ImagePaddingManager.nextPowerOfTwo(width);
+        int paddedHeight = ImagePaddingManager.nextPowerOfTwo(height);
+        if (Integer.bitCount(resolution) != 1 || resolution > paddedWidth ||
+                resolution < Math.max(1, paddedWidth / paddedHeight)) {
+            throw new IllegalArgumentException("Invalid resolution: " + resolution);
+        }
+        int numRows = paddedHeight / (paddedWidth / resolution);
+
+        StreamingAsciiOutput.RowWriter rows = output instanceof StreamingAsciiOutput ?
+                ((StreamingAsciiOutput) output).begin(numRows, resolution) : null;
+        try {
+            char[][] chars = fill(image, resolution, paddedWidth, paddedHeight, rows);
+            if (rows == null && output != null) {
+                output.out(chars);
+            }
+            return chars;
+        } finally {
+            if (rows != null) {
+                rows.close();
+            }
+        }
+    }
+
+    /**
+     * Walks the image one padded scanline at a time, matching each row of tiles as soon as it is
+     * complete.
+     *
+     * @param image        The decoded image.
+     * @param resolution   The number of characters in a row.
+     * @param paddedWidth  The width of the padded image.
+     * @param paddedHeight The height of the padded image.
+     * @param rows         The writer each row of the art is streamed to, or null.
+     * @return A 2D array of characters representing the ASCII art.
+     */
+    private char[][] fill(BufferedImage image, int resolution, int paddedWidth, int paddedHeight,
+                          StreamingAsciiOutput.RowWriter rows) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int offsetRow = (paddedHeight - height) / 2;
+        int offsetCol = (paddedWidth - width) / 2;
+        int squareSize = paddedWidth / resolution;
+        int numRows = paddedHeight / squareSize;
+        int tilePixels = squareSize * squareSize;
+
+        char[][] chars = new char[numRows][resolution];
+        double[] sums = new double[resolution];
+        int[] scanline = new int[width];
+        for (int row = 0; row < paddedHeight; row++) {
+            int sourceRow = row - offsetRow;
+            if (sourceRow >= 0 && sourceRow < height) {
+                image.getRGB(0, sourceRow, width, 1, scanline, 0, width);
+                addScanline(sums, scanline, offsetCol, paddedWidth, squareSize);
+            } else {
+                addPaddingRow(sums, paddedWidth, squareSize);
+            }
+            if (row % squareSize == squareSize - 1) {
+                char[] tileRow = chars[row / squareSize];
+                for (int col = 0; col < resolution; col++) {
+                    tileRow[col] = matcher.getCharByImageBrightness(sums[col] / tilePixels / MAX_RGB);
+                    sums[col] = 0;
+                }
+                if (rows != null) {
+                    rows.outRow(tileRow);
+                }
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Adds the grey levels of a padded scanline to the sums of the tiles it crosses, left to right.
+     *
+     * @param sums        The sums of the current row of tiles.
+     * @param scanline    The source pixels of the scanline.
+     * @param offsetCol   The column of the padded scanline the source pixels start at.
+     * @param paddedWidth The width of the padded image.
+     * @param squareSize  The side of a tile.
+     */
+    private static void addScanline(double[] sums, int[] scanline, int offsetCol, int paddedWidth,
+                                    int squareSize) {
+        int endCol = offsetCol + scanline.length;
+        for (int col = 0; col < paddedWidth; col++) {
+            double grey;
+            if (col >= offsetCol && col < endCol) {
+                int rgb = scanline[col - offsetCol];
+                grey = ((rgb >> 16) & MAX_RGB) * RED_COEFFICIENT + ((rgb >> 8) & MAX_RGB) * GREEN_COEFFICIENT +
+                        (rgb & MAX_RGB) * BLUE_COEFFICIENT;
+            } else {
+                grey = PADDING_GREY;
+            }
+            sums[col / squareSize] += grey;
+        }
+    }
+
+    /**
+     * Adds a row of white padding to the sums of the current row of tiles. The grey level is added
+     * pixel by pixel, as the staged pipeline does, so that the sums round the same way.
+     *
+     * @param sums        The sums of the current row of tiles.
+     * @param paddedWidth The width of the padded image.
+     * @param squareSize  The side of a tile.
+     */
+    private static void addPaddingRow(double[] sums, int paddedWidth, int squareSize) {
+        for (int col = 0; col < paddedWidth; col++) {
+            sums[col / squareSize] += PADDING_GREY;
+        }
+    }
+
+    /**
+     * Converts an image file to an HTML file with the default charset and rounding.
+     *
+     * @param args The image file, and optionally the resolution and the HTML file.
+     * @throws IOException If the image cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.out.println("Usage: FusedAsciiArtEngine <image> [resolution] [out.html]");
+            return;
+        }
+        int resolution = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RESOLUTION;
+        String htmlFile = args.length > 2 ? args[2] : "out.html";
+        SubImgCharMatcher matcher = new SubImgCharMatcher(new char[]{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'});
+        new FusedAsciiArtEngine(matcher).run(args[0], resolution, new HtmlAsciiOutput(htmlFile, DEFAULT_FONT));
+    }
+}
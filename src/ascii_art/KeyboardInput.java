@@ -1,5 +1,6 @@
 package ascii_art;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 class KeyboardInput {
@@ -7,7 +8,7 @@ class KeyboardInput {
     private final Scanner scanner;
 
     private KeyboardInput() {
-        this.scanner = new Scanner(System.in);
+        this.scanner = new Scanner(System.in, StandardCharsets.UTF_8);
     }
 
     public static KeyboardInput getObject() {
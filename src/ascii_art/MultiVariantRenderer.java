@@ -0,0 +1,332 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import image.SubImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The MultiVariantRenderer class renders one image at several settings at once, for example a preview
+ * and a full version, or several charsets and rounding methods side by side.
+ * Tile brightness is computed by a single scan of the image, at the finest resolution asked for; each
+ * coarser grid is then derived from it by averaging 2x2 blocks of tiles, which equals the scanned
+ * brightness up to floating-point rounding. A tile whose brightness lies within that rounding of the
+ * boundary between two characters may therefore match a different character than in a direct render
+ * at the coarser resolution. Matching and output then fan out to every variant in parallel, on a pool
+ * of threads kept for the life of the renderer, each charset and rounding method using its own matcher.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class MultiVariantRenderer implements AutoCloseable {
+
+    // Constants
+    private static final long NANOS_IN_MILLI = 1_000_000L; // Nanoseconds in a millisecond
+
+    // Fields
+    private final SubImageManager subImageManager; // The manager for handling sub-images
+    private final int imageWidth; // The width of the padded image
+    private final int imageHeight; // The height of the padded image
+    private final ExecutorService executor; // The threads variants are rendered on
+    private final Map<String, SubImgCharMatcher> matchers; // Warmed matchers by charset and rounding
+
+    /**
+     * One setting to render the image at.
+     */
+    public static class Variant {
+        private final int resolution;
+        private final char[] charset;
+        private final String roundingMethod;
+        private final AsciiOutput output;
+
+        /**
+         * Constructs a Variant.
+         *
+         * @param resolution     The number of characters in a row.
+         * @param charset        The characters to render with.
+         * @param roundingMethod The rounding method ("up", "down" or "abs").
+         * @param output         The output the art is delivered to, or null to only return it.
+         */
+        public Variant(int resolution, char[] charset, String roundingMethod, AsciiOutput output) {
+            this.resolution = resolution;
+            this.charset = charset.clone();
+            this.roundingMethod = roundingMethod;
+            this.output = output;
+        }
+
+        /**
+         * @return The number of characters in a row.
+         */
+        public int getResolution() {
+            return resolution;
+        }
+
+        /**
+         * @return The rounding method.
+         */
+        public String getRoundingMethod() {
+            return roundingMethod;
+        }
+
+        /**
+         * @return The key of the matcher this variant uses.
+         */
+        private String matcherKey() {
+            char[] sorted = charset.clone();
+            Arrays.sort(sorted);
+            return roundingMethod + ":" + new String(sorted);
+        }
+    }
+
+    /**
+     * The outcome of rendering one variant.
+     */
+    public static class VariantResult {
+        private final Variant variant;
+        private final char[][] chars;
+        private final long matchNanos;
+        private final long outputNanos;
+
+        private VariantResult(Variant variant, char[][] chars, long matchNanos, long outputNanos) {
+            this.variant = variant;
+            this.chars = chars;
+            this.matchNanos = matchNanos;
+            this.outputNanos = outputNanos;
+        }
+
+        /**
+         * @return The variant rendered.
+         */
+        public Variant getVariant() {
+            return variant;
+        }
+
+        /**
+         * @return The ASCII art of the variant.
+         */
+        public char[][] getChars() {
+            return chars;
+        }
+
+        /**
+         * @return The time spent matching characters to tiles, in milliseconds.
+         */
+        public double getMatchMillis() {
+            return (double) matchNanos / NANOS_IN_MILLI;
+        }
+
+        /**
+         * @return The time spent delivering the art to the output, in milliseconds.
+         */
+        public double getOutputMillis() {
+            return (double) outputNanos / NANOS_IN_MILLI;
+        }
+    }
+
+    /**
+     * The outcome of rendering all variants.
+     */
+    public static class Result {
+        private final List<VariantResult> variants;
+        private final long brightnessNanos;
+        private final long elapsedNanos;
+
+        private Result(List<VariantResult> variants, long brightnessNanos, long elapsedNanos) {
+            this.variants = Collections.unmodifiableList(variants);
+            this.brightnessNanos = brightnessNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The result of every variant, in the order the variants were given.
+         */
+        public List<VariantResult> getVariants() {
+            return variants;
+        }
+
+        /**
+         * @return The time spent computing the brightness grids of all resolutions, in milliseconds.
+         */
+        public double getBrightnessMillis() {
+            return (double) brightnessNanos / NANOS_IN_MILLI;
+        }
+
+        /**
+         * @return The total time spent, in milliseconds.
+         */
+        public double getElapsedMillis() {
+            return (double) elapsedNanos / NANOS_IN_MILLI;
+        }
+    }
+
+    /**
+     * Constructs a MultiVariantRenderer that uses all available processors.
+     *
+     * @param subImageManager The manager for handling sub-images of the padded image.
+     * @param imageWidth      The width of the padded image.
+     * @param imageHeight     The height of the padded image.
+     */
+    public MultiVariantRenderer(SubImageManager subImageManager, int imageWidth, int imageHeight) {
+        this(subImageManager, imageWidth, imageHeight, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a MultiVariantRenderer with the given number of threads.
+     *
+     * @param subImageManager The manager for handling sub-images of the padded image.
+     * @param imageWidth      The width of the padded image.
+     * @param imageHeight     The height of the padded image.
+     * @param numThreads      The number of threads variants are rendered on.
+     */
+    public MultiVariantRenderer(SubImageManager subImageManager, int imageWidth, int imageHeight,
+                                int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.subImageManager = subImageManager;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "multi-variant");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.matchers = new HashMap<>();
+    }
+
+    /**
+     * Renders every variant. Variants that share an output are delivered to it one at a time.
+     * Matchers are kept between calls, so a charset is rasterized only the first time it is used.
+     *
+     * @param variants The variants to render.
+     * @return The art and timings of every variant.
+     * @throws IllegalArgumentException If a resolution is not a legal power of two, or a charset has
+     *                                  fewer than two characters.
+     */
+    public synchronized Result render(List<Variant> variants) {
+        long start = System.nanoTime();
+        int finest = 0;
+        for (Variant variant : variants) {
+            checkVariant(variant);
+            finest = Math.max(finest, variant.resolution);
+        }
+        for (Variant variant : variants) {
+            // Warm each matcher on this thread, so the workers only ever read it.
+            matchers.computeIfAbsent(variant.matcherKey(), key -> {
+                SubImgCharMatcher matcher = new SubImgCharMatcher(variant.charset);
+                matcher.setRoundingMethod(variant.roundingMethod);
+                matcher.getCharByImageBrightness(0);
+                return matcher;
+            });
+        }
+
+        long brightnessStart = System.nanoTime();
+        Map<Integer, double[][]> grids = new HashMap<>();
+        if (!variants.isEmpty()) {
+            double[][] grid = subImageManager.getBrightnessGrid(finest);
+            for (int resolution = finest; resolution >= 1; resolution /= 2) {
+                grids.put(resolution, grid);
+                if (grid.length % 2 != 0 || resolution % 2 != 0) {
+                    break;
+                }
+                grid = halveGrid(grid);
+            }
+        }
+        long brightnessNanos = System.nanoTime() - brightnessStart;
+
+        List<Callable<VariantResult>> tasks = new ArrayList<>();
+        for (Variant variant : variants) {
+            double[][] grid = grids.get(variant.resolution);
+            SubImgCharMatcher matcher = matchers.get(variant.matcherKey());
+            tasks.add(() -> renderVariant(variant, grid, matcher));
+        }
+        List<VariantResult> results = new ArrayList<>();
+        try {
+            for (Future<VariantResult> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rendering variants", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to render a variant", e.getCause());
+        }
+        return new Result(results, brightnessNanos, System.nanoTime() - start);
+    }
+
+    /**
+     * Stops the threads variants are rendered on.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Checks that a variant can be rendered from the padded image.
+     *
+     * @param variant The variant to check.
+     */
+    private void checkVariant(Variant variant) {
+        int resolution = variant.resolution;
+        int minResolution = Math.max(1, imageWidth / imageHeight);
+        if (Integer.bitCount(resolution) != 1 || resolution < minResolution || resolution > imageWidth) {
+            throw new IllegalArgumentException("Invalid resolution: " + resolution);
+        }
+        if (variant.charset.length < 2) {
+            throw new IllegalArgumentException("Charset is too small");
+        }
+    }
+
+    /**
+     * Matches and outputs one variant.
+     *
+     * @param variant The variant to render.
+     * @param grid    The brightness grid at the variant's resolution.
+     * @param matcher The warmed matcher of the variant's charset and rounding method.
+     * @return The art and timings of the variant.
+     */
+    private static VariantResult renderVariant(Variant variant, double[][] grid, SubImgCharMatcher matcher) {
+        long start = System.nanoTime();
+        char[][] chars = new char[grid.length][variant.resolution];
+        for (int row = 0; row < grid.length; row++) {
+            for (int col = 0; col < variant.resolution; col++) {
+                chars[row][col] = matcher.getCharByImageBrightness(grid[row][col]);
+            }
+        }
+        long matched = System.nanoTime();
+        if (variant.output != null) {
+            synchronized (variant.output) {
+                variant.output.out(chars);
+            }
+        }
+        return new VariantResult(variant, chars, matched - start, System.nanoTime() - matched);
+    }
+
+    /**
+     * Derives the brightness grid of half the resolution, each tile the mean of a 2x2 block.
+     *
+     * @param grid The brightness grid, with an even number of rows and columns.
+     * @return The brightness grid of half the resolution.
+     */
+    private static double[][] halveGrid(double[][] grid) {
+        double[][] half = new double[grid.length / 2][grid[0].length / 2];
+        for (int row = 0; row < half.length; row++) {
+            for (int col = 0; col < half[row].length; col++) {
+                half[row][col] = (grid[2 * row][2 * col] + grid[2 * row][2 * col + 1] +
+                        grid[2 * row + 1][2 * col] + grid[2 * row + 1][2 * col + 1]) / 4;
+            }
+        }
+        return half;
+    }
+}
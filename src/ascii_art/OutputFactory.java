@@ -0,0 +1,115 @@
+package ascii_art;
+
+import ascii_output.AnsiDiffAsciiOutput;
+import ascii_output.AsciiOutput;
+import ascii_output.ColoredHtmlAsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.ImageAsciiOutput;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The OutputFactory class creates the outputs of the shell's output methods, and knows the file each
+ * one writes to by default, whether it is colored and how much memory it needs per tile.
+ *
+ * @ Author: Hadas Elezra
+ */
+final class OutputFactory {
+
+    // Constants
+    private static final String DEFAULT_FONT = "Courier New"; // Default font for HTML output
+    private static final String DEFAULT_HTML_FILE = "out.html"; // Default file of the HTML outputs
+    private static final String DEFAULT_PNG_FILE = "out.png"; // Default file of the image outputs
+    private static final long RASTER_BYTES_PER_TILE = 512; // Image outputs: an int per pixel of an 8x16 cell
+    private static final long TEXT_BYTES_PER_TILE = 8; // Text outputs: buffered and escaped chars of a tile
+
+    // Private constructor to prevent instantiation
+    private OutputFactory() {
+    }
+
+    /**
+     * Creates an output.
+     *
+     * @param kind     The output method.
+     * @param fileName The file to write to, for the output methods that write files.
+     * @return The output.
+     * @throws CommandException If the output method is unknown.
+     */
+    static AsciiOutput create(String kind, String fileName) throws CommandException {
+        switch (kind) {
+            case "console":
+                return new ConsoleAsciiOutput();
+            case "html":
+                return new HtmlAsciiOutput(fileName, DEFAULT_FONT);
+            case "html-color":
+            case "html-color-gz":
+                // The gz method compresses whatever the file is named, and a .gz file is always compressed.
+                return new ColoredHtmlAsciiOutput(fileName, DEFAULT_FONT,
+                        kind.equals("html-color-gz") || fileName.endsWith(".gz"));
+            case "ansi":
+                return new AnsiDiffAsciiOutput();
+            case "png":
+            case "png-color":
+                return new ImageAsciiOutput(fileName, DEFAULT_FONT);
+            default:
+                throw new CommandException("Did not change output method due to incorrect format.");
+        }
+    }
+
+    /**
+     * Returns the file an output method writes to by default.
+     *
+     * @param kind The output method.
+     * @return The default file, or null if the output method writes to the terminal.
+     */
+    static String defaultFile(String kind) {
+        switch (kind) {
+            case "html":
+            case "html-color":
+                return DEFAULT_HTML_FILE;
+            case "html-color-gz":
+                return DEFAULT_HTML_FILE + ".gz";
+            case "png":
+            case "png-color":
+                return DEFAULT_PNG_FILE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param kind The output method.
+     * @return Whether the output method colors each character by its tile's average color.
+     */
+    static boolean isColored(String kind) {
+        return kind.equals("html-color") || kind.equals("html-color-gz") || kind.equals("png-color");
+    }
+
+    /**
+     * @param kind The output method.
+     * @return The estimated working memory of the output method per tile, in bytes.
+     */
+    static long bytesPerTile(String kind) {
+        return kind.startsWith("png") ? RASTER_BYTES_PER_TILE : TEXT_BYTES_PER_TILE;
+    }
+
+    /**
+     * Returns the file a variant is written to: the output's file, with the variant's name before
+     * its extension.
+     *
+     * @param fileName The file of the output.
+     * @param name     The name of the variant.
+     * @return The file of the variant.
+     */
+    static String variantFile(String fileName, String name) {
+        Path baseName = Paths.get(fileName).getFileName();
+        int nameStart = baseName == null ? 0 : fileName.length() - baseName.toString().length();
+        int extension = fileName.indexOf('.', nameStart);
+        if (extension < 0) {
+            return fileName + "-" + name;
+        }
+        return fileName.substring(0, extension) + "-" + name + fileName.substring(extension);
+    }
+}
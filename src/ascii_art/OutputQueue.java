@@ -0,0 +1,148 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import ascii_output.ColoredAsciiOutput;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The OutputQueue class writes the shell's ASCII art and messages in the order they are given.
+ * They are written directly, or, while a script runs, on a single background thread, so that writing
+ * one ASCII art overlaps rendering the next. A queued write to a file is skipped if a later write to
+ * the same file is queued before it starts. The memory reservation of a render is released once its
+ * write is done or skipped.
+ * <p>
+ * This is all the pipelining script mode does: commands still execute one at a time and in order,
+ * since each one depends on the settings left by the commands before it, and writes stay in order.
+ * A write that fails in the background is reported by the next {@link #awaitPending()} or
+ * {@link #stopBackground()}.
+ *
+ * @ Author: Hadas Elezra
+ */
+class OutputQueue {
+
+    // Fields
+    private ExecutorService executor; // The background thread, or null while writing directly
+    private final Map<String, Long> latestWrites = new ConcurrentHashMap<>(); // Latest write id per file
+    private long writeCount; // The number of file writes queued so far
+    private final AtomicReference<String> failure = new AtomicReference<>(); // First unreported failure
+
+    /**
+     * Starts writing on a background thread.
+     */
+    void startBackground() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Waits until everything queued is written, and goes back to writing directly.
+     *
+     * @throws CommandException If a write failed since the last failure was reported.
+     */
+    void stopBackground() throws CommandException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        reportFailure();
+    }
+
+    /**
+     * Prints a message, after every output and message before it.
+     *
+     * @param message The message.
+     */
+    void println(String message) {
+        if (executor == null) {
+            System.out.println(message);
+        } else {
+            executor.execute(() -> System.out.println(message));
+        }
+    }
+
+    /**
+     * Waits until every output and message queued so far is written.
+     *
+     * @throws CommandException If a write failed since the last failure was reported.
+     */
+    void awaitPending() throws CommandException {
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to wait for pending writes", e);
+        }
+        reportFailure();
+    }
+
+    /**
+     * Writes ASCII art to an output, after every output and message before it.
+     *
+     * @param target      The output.
+     * @param targetFile  The file the output writes to, or null.
+     * @param art         The ASCII art.
+     * @param tileColors  The tile colors for a colored output, or null.
+     * @param reservation The memory reservation of the render.
+     * @throws CommandException If the output is written directly and fails.
+     */
+    void deliver(AsciiOutput target, String targetFile, char[][] art, Color[][] tileColors,
+                 RenderAdmissionController.Reservation reservation) throws CommandException {
+        Runnable write = () -> {
+            try (reservation) {
+                if (tileColors != null) {
+                    ((ColoredAsciiOutput) target).out(art, tileColors);
+                } else {
+                    target.out(art);
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, String.format("Did not write %s due to an error: %s.",
+                        targetFile == null ? "the ASCII art" : "\"" + targetFile + "\"", e));
+            }
+        };
+        if (executor == null) {
+            write.run();
+            reportFailure();
+        } else if (targetFile == null) {
+            executor.execute(write);
+        } else {
+            long writeId = ++writeCount;
+            latestWrites.put(targetFile, writeId);
+            executor.execute(() -> {
+                if (latestWrites.get(targetFile) == writeId) {
+                    write.run();
+                } else {
+                    reservation.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Reports the first write that failed since the last report, if any.
+     *
+     * @throws CommandException If a write failed.
+     */
+    private void reportFailure() throws CommandException {
+        String message = failure.getAndSet(null);
+        if (message != null) {
+            throw new CommandException(message);
+        }
+    }
+}
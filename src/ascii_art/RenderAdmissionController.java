@@ -0,0 +1,277 @@
+package ascii_art;
+
+import image.Image;
+import image.ImagePaddingManager;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The RenderAdmissionController class guards the render pipeline against running out of heap when
+ * several large images arrive at once. Every render reserves its estimated peak memory against a
+ * fixed budget before it starts; renders that do not fit wait in a first-come first-served queue,
+ * and renders that can never fit, or that find the queue full, are rejected.
+ * <p>
+ * The estimate of loading an image is made from the image header alone, so a rejected image is never
+ * decoded. Once an image is loaded, the memory it keeps and the working memory of each render of it
+ * can be reserved separately.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class RenderAdmissionController {
+
+    // Constants
+    private static final long DECODED_BYTES_PER_PIXEL = 4; // ARGB raster of the decoded image
+    private static final long COLOR_BYTES_PER_PIXEL = 36; // A Color object and the reference to it
+    private static final long REFERENCE_BYTES = 4; // A compressed object reference
+    private static final long ARRAY_HEADER_BYTES = 16; // Header of an array object
+    private static final long IMAGE_OBJECT_BYTES = 24; // An Image object without its pixel array
+    private static final long BRIGHTNESS_BYTES_PER_TILE = Double.BYTES; // A tile of a brightness grid
+    private static final long CHAR_BYTES_PER_TILE = Character.BYTES; // A tile of the ASCII art
+
+    // Fields
+    private final long budgetBytes; // The memory that may be reserved at once
+    private final int maxQueueDepth; // The number of renders that may wait, or 0 for no limit
+    private final Deque<Object> waiting; // Tickets of the waiting renders, in arrival order
+    private long reservedBytes; // The memory currently reserved
+    private long admittedCount; // The number of renders admitted so far
+    private long rejectedCount; // The number of renders rejected so far
+
+    /**
+     * A memory reservation held while a render runs. Closing it releases the memory.
+     */
+    public class Reservation implements AutoCloseable {
+        private final long bytes;
+        private boolean released;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return The number of bytes reserved.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            synchronized (RenderAdmissionController.this) {
+                if (!released) {
+                    released = true;
+                    reservedBytes -= bytes;
+                    RenderAdmissionController.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructs a RenderAdmissionController.
+     *
+     * @param budgetBytes   The memory that may be reserved at once.
+     * @param maxQueueDepth The number of renders that may wait for memory, or 0 for no limit.
+     */
+    public RenderAdmissionController(long budgetBytes, int maxQueueDepth) {
+        if (budgetBytes <= 0 || maxQueueDepth < 0) {
+            throw new IllegalArgumentException("Budget must be positive and queue depth non-negative");
+        }
+        this.budgetBytes = budgetBytes;
+        this.maxQueueDepth = maxQueueDepth;
+        this.waiting = new ArrayDeque<>();
+    }
+
+    /**
+     * Reserves the estimated peak memory of rendering an image file at a resolution.
+     *
+     * @param imageName     The image file; only its header is read.
+     * @param resolution    The requested resolution.
+     * @param timeoutMillis How long to wait for memory, or 0 to wait indefinitely.
+     * @return The reservation, to be closed when the render is done.
+     * @throws IOException          If the image header cannot be read.
+     * @throws AdmissionException   If the render does not fit the budget, the queue is full, or the
+     *                              timeout elapses.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Reservation admit(String imageName, int resolution, long timeoutMillis)
+            throws IOException, AdmissionException, InterruptedException {
+        Dimension dimensions = Image.readDimensions(imageName);
+        return reserve(estimatePeakBytes(dimensions.width, dimensions.height, resolution), timeoutMillis);
+    }
+
+    /**
+     * Reserves the given number of bytes, waiting in line until they fit the budget.
+     *
+     * @param bytes         The number of bytes to reserve.
+     * @param timeoutMillis How long to wait for memory, or 0 to wait indefinitely.
+     * @return The reservation, to be closed when the render is done.
+     * @throws AdmissionException   If the bytes exceed the whole budget, the queue is full, or the
+     *                              timeout elapses.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized Reservation reserve(long bytes, long timeoutMillis)
+            throws AdmissionException, InterruptedException {
+        if (bytes > budgetBytes) {
+            rejectedCount++;
+            throw new AdmissionException("Did not execute due to needing " + bytes +
+                    " bytes, more than the memory budget.");
+        }
+        if (waiting.isEmpty() && reservedBytes + bytes <= budgetBytes) {
+            return grant(bytes);
+        }
+        if (maxQueueDepth > 0 && waiting.size() >= maxQueueDepth) {
+            rejectedCount++;
+            throw new AdmissionException("Did not execute due to a full render queue.");
+        }
+
+        Object ticket = new Object();
+        waiting.addLast(ticket);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            while (waiting.peekFirst() != ticket || reservedBytes + bytes > budgetBytes) {
+                if (timeoutMillis == 0) {
+                    wait();
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        rejectedCount++;
+                        throw new AdmissionException("Did not execute due to timing out waiting for memory.");
+                    }
+                    wait(remaining);
+                }
+            }
+            return grant(bytes);
+        } finally {
+            waiting.remove(ticket);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Reserves the given number of bytes if they fit the budget now, without waiting in line. For a
+     * caller that would otherwise wait on memory only it could release.
+     *
+     * @param bytes The number of bytes to reserve.
+     * @return The reservation, to be closed when the render is done, or null if the bytes do not fit
+     *         now or other renders are waiting.
+     * @throws AdmissionException If the bytes exceed the whole budget.
+     */
+    public synchronized Reservation tryReserve(long bytes) throws AdmissionException {
+        if (bytes > budgetBytes) {
+            rejectedCount++;
+            throw new AdmissionException("Did not execute due to needing " + bytes +
+                    " bytes, more than the memory budget.");
+        }
+        if (!waiting.isEmpty() || reservedBytes + bytes > budgetBytes) {
+            return null;
+        }
+        return grant(bytes);
+    }
+
+    /**
+     * Estimates the peak heap needed to render an image of the given size.
+     * At the peak the decoded raster, the loaded image, the padded image and the sub-image tiles
+     * (which share the padded image's Color objects) are all reachable.
+     *
+     * @param width      The width of the image.
+     * @param height     The height of the image.
+     * @param resolution The requested resolution.
+     * @return The estimated peak number of bytes.
+     */
+    public static long estimatePeakBytes(int width, int height, int resolution) {
+        long pixels = (long) width * height;
+        long paddedWidth = ImagePaddingManager.nextPowerOfTwo(width);
+        long paddedHeight = ImagePaddingManager.nextPowerOfTwo(height);
+        long paddedPixels = paddedWidth * paddedHeight;
+        long squareSize = Math.max(1, paddedWidth / Math.max(1, resolution));
+        long tiles = (paddedWidth / squareSize) * (paddedHeight / squareSize);
+
+        long decoded = pixels * DECODED_BYTES_PER_PIXEL;
+        long loaded = pixels * COLOR_BYTES_PER_PIXEL + height * ARRAY_HEADER_BYTES;
+        long padded = estimateImageBytes((int) paddedWidth, (int) paddedHeight);
+        long subImages = paddedPixels * REFERENCE_BYTES +
+                tiles * (IMAGE_OBJECT_BYTES + (squareSize + 1) * ARRAY_HEADER_BYTES);
+        return decoded + loaded + padded + subImages;
+    }
+
+    /**
+     * Estimates the heap a loaded padded image keeps for as long as it is in use.
+     *
+     * @param paddedWidth  The width of the padded image.
+     * @param paddedHeight The height of the padded image.
+     * @return The estimated number of bytes.
+     */
+    public static long estimateImageBytes(int paddedWidth, int paddedHeight) {
+        return (long) paddedWidth * paddedHeight * COLOR_BYTES_PER_PIXEL + paddedHeight * ARRAY_HEADER_BYTES;
+    }
+
+    /**
+     * Estimates the peak working heap of one render of a loaded padded image: the sub-image tiles if
+     * the render divides the image into them, the brightness grid, the ASCII art, the tile colors of a
+     * colored output, and what the output and the render mode allocate per tile, such as a raster or
+     * the diffused error of dithering.
+     *
+     * @param paddedWidth        The width of the padded image.
+     * @param paddedHeight       The height of the padded image.
+     * @param resolution         The resolution rendered at.
+     * @param subImages          Whether the render divides the image into sub-images.
+     * @param colored            Whether the output is colored by the tile colors.
+     * @param extraBytesPerTile  The bytes the output and the render mode allocate per tile.
+     * @return The estimated peak number of bytes.
+     */
+    public static long estimateRenderBytes(int paddedWidth, int paddedHeight, int resolution, boolean subImages,
+                                           boolean colored, long extraBytesPerTile) {
+        long squareSize = Math.max(1, paddedWidth / Math.max(1, resolution));
+        long numRows = paddedHeight / squareSize;
+        long tiles = resolution * numRows;
+        long tileImages = !subImages ? 0 : (long) paddedWidth * paddedHeight * REFERENCE_BYTES +
+                tiles * (IMAGE_OBJECT_BYTES + (squareSize + 1) * ARRAY_HEADER_BYTES);
+        long grids = tiles * (BRIGHTNESS_BYTES_PER_TILE + CHAR_BYTES_PER_TILE) + 2 * numRows * ARRAY_HEADER_BYTES;
+        long colors = colored ? tiles * COLOR_BYTES_PER_PIXEL + numRows * ARRAY_HEADER_BYTES : 0;
+        return tileImages + grids + colors + tiles * extraBytesPerTile;
+    }
+
+    /**
+     * @return The number of renders waiting for memory.
+     */
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    /**
+     * @return The number of bytes currently reserved.
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * @return The memory that may be reserved at once.
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * @return The number of renders admitted so far.
+     */
+    public synchronized long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    /**
+     * @return The number of renders rejected so far.
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    private Reservation grant(long bytes) {
+        reservedBytes += bytes;
+        admittedCount++;
+        return new Reservation(bytes);
+    }
+}
@@ -0,0 +1,67 @@
+package ascii_art;
+
+import image.SubImageManager;
+
+import java.awt.*;
+
+/**
+ * The RenderCache class keeps the last ASCII art the shell rendered, by a key of every setting it
+ * depends on, so that it is output again instead of rendered again while the settings do not change.
+ * It also keeps the tile colors of the last colored output.
+ *
+ * @ Author: Hadas Elezra
+ */
+class RenderCache {
+
+    // Fields
+    private String key; // The settings the art was rendered with, or null before the first render
+    private char[][] art; // The last ASCII art rendered
+    private int mismatches = -1; // The tiles of the art that differ from the exact brightness, or -1
+    private Color[][] tileColors; // The tile colors of the last colored output
+    private int colorResolution; // The resolution the tile colors were computed at
+
+    /**
+     * Returns the cached art if it was rendered with the given settings.
+     *
+     * @param key The key of the settings.
+     * @return The art, or null if it was rendered with other settings.
+     */
+    char[][] get(String key) {
+        return key.equals(this.key) ? art : null;
+    }
+
+    /**
+     * Caches an ASCII art.
+     *
+     * @param key        The key of the settings it was rendered with.
+     * @param art        The ASCII art.
+     * @param mismatches The number of its tiles that differ from the exact brightness, or -1.
+     */
+    void put(String key, char[][] art, int mismatches) {
+        this.key = key;
+        this.art = art;
+        this.mismatches = mismatches;
+    }
+
+    /**
+     * @return The number of tiles of the cached art that differ from the exact brightness, or -1.
+     */
+    int getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * Returns the tile colors at a resolution, computing them unless they were the last ones computed.
+     *
+     * @param subImageManager The manager for handling sub-images.
+     * @param resolution      The resolution.
+     * @return The tile colors.
+     */
+    Color[][] getTileColors(SubImageManager subImageManager, int resolution) {
+        if (tileColors == null || colorResolution != resolution) {
+            tileColors = subImageManager.getColorGrid(resolution);
+            colorResolution = resolution;
+        }
+        return tileColors;
+    }
+}
@@ -0,0 +1,76 @@
+package ascii_art;
+
+import image.SubImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+/**
+ * The SampledAsciiArtAlgorithm class converts an image into ASCII art from sampled, rather than
+ * exact, tile brightness, so that large tiles read only a small fraction of their pixels.
+ * Sampling of a tile stops once its estimate is within half of the smallest gap between the
+ * matcher's brightness levels at about 95% confidence. Such a tile gets the exact path's character
+ * or a neighbouring level, but this is a confidence statement, not a bound: about one tile in twenty
+ * may be further off. {@link #countMismatches} measures how many tiles actually differ.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class SampledAsciiArtAlgorithm {
+
+    // Fields
+    private final int resolution; // The resolution for dividing the image into sub-images
+    private final SubImgCharMatcher matcher; // The matcher for matching brightness to characters
+    private final SubImageManager subImageManager; // The manager for handling sub-images
+
+    /**
+     * Constructs a SampledAsciiArtAlgorithm.
+     *
+     * @param resolution      The resolution for dividing the image into sub-images.
+     * @param matcher         The matcher for matching brightness to characters.
+     * @param subImageManager The manager for handling sub-images of the padded image.
+     */
+    public SampledAsciiArtAlgorithm(int resolution, SubImgCharMatcher matcher,
+                                    SubImageManager subImageManager) {
+        this.resolution = resolution;
+        this.matcher = matcher;
+        this.subImageManager = subImageManager;
+    }
+
+    /**
+     * Runs the algorithm.
+     *
+     * @return A 2D array of characters representing the ASCII art.
+     */
+    public char[][] run() {
+        double tolerance = matcher.getMinBrightnessGap() / 2;
+        return match(subImageManager.getSampledBrightnessGrid(resolution, tolerance));
+    }
+
+    /**
+     * Counts the tiles whose character differs from the one the exact brightness gives.
+     * This reads every pixel, so it is meant for checking the sampled mode, not for every render.
+     *
+     * @param sampled The art returned by {@link #run()}.
+     * @return The number of tiles with a different character.
+     */
+    public int countMismatches(char[][] sampled) {
+        char[][] exact = match(subImageManager.getBrightnessGrid(resolution));
+        int mismatches = 0;
+        for (int row = 0; row < exact.length; row++) {
+            for (int col = 0; col < exact[row].length; col++) {
+                if (exact[row][col] != sampled[row][col]) {
+                    mismatches++;
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    private char[][] match(double[][] brightness) {
+        char[][] chars = new char[brightness.length][resolution];
+        for (int row = 0; row < brightness.length; row++) {
+            for (int col = 0; col < resolution; col++) {
+                chars[row][col] = matcher.getCharByImageBrightness(brightness[row][col]);
+            }
+        }
+        return chars;
+    }
+}
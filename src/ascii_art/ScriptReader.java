@@ -0,0 +1,37 @@
+package ascii_art;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * The ScriptReader class reads the commands of a script, one per line. Blank lines and lines starting
+ * with '#' are skipped, and the commands are trimmed.
+ *
+ * @ Author: Hadas Elezra
+ */
+class ScriptReader implements CommandReader {
+
+    // Constants
+    private static final String SCRIPT_COMMENT = "#"; // Prefix of script lines that are skipped
+
+    // Fields
+    private final BufferedReader script; // The script the commands are read from
+
+    /**
+     * Constructs a ScriptReader.
+     *
+     * @param script The script to read commands from.
+     */
+    ScriptReader(BufferedReader script) {
+        this.script = script;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        String line = script.readLine();
+        while (line != null && (line.trim().isEmpty() || line.trim().startsWith(SCRIPT_COMMENT))) {
+            line = script.readLine();
+        }
+        return line == null ? null : line.trim();
+    }
+}
@@ -0,0 +1,411 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import image.ImagePaddingManager;
+
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The ShardCoordinator class renders images too large for one JVM by splitting them across worker
+ * processes on the same machine. The padded image's tile grid is cut into one contiguous band of whole
+ * tile rows per worker, and each band is sent as a shard spec (file, rows, resolution, charset,
+ * rounding) to a child JVM running {@link ShardWorker} over its standard input and output. The worker
+ * decodes only its own band, so no process ever holds the whole image. A decoder cannot resume where
+ * it stopped, so decoding a band decodes the file from its start; one band per worker keeps that to a
+ * single pass per worker, instead of one per band. The rows that come back are reassembled in order.
+ * A shard whose worker dies or exceeds the timeout is retried on a fresh worker.
+ * <p>
+ * Usage: {@code java ascii_art.ShardCoordinator <image> <resolution> [workers] [out.html]}
+ *
+ * @ Author: Hadas Elezra
+ */
+public class ShardCoordinator implements AutoCloseable {
+
+    // Constants
+    private static final int DEFAULT_MAX_RETRIES = 2; // Retries of a failed shard
+    private static final long DEFAULT_SHARD_TIMEOUT_MILLIS = 60_000; // Time a worker has per shard
+    private static final String DEFAULT_ROUNDING = "abs"; // Rounding method of the command line
+    private static final String DEFAULT_CHARS = "0123456789"; // Charset of the command line
+    private static final String DEFAULT_FONT = "Courier New"; // Font for HTML output
+    private static final double NANOS_IN_MILLI = 1_000_000.0; // Nanoseconds in a millisecond
+
+    // Fields
+    private final int numWorkers; // The number of worker processes
+    private final int maxRetries; // How many times a failed shard is retried
+    private final long shardTimeoutMillis; // How long a worker may take for one shard
+    private final List<String> workerJvmOptions; // Extra options of the worker JVMs, such as -Xmx
+    private final Worker[] workers; // The worker processes, started on first use
+    private final ScheduledExecutorService watchdog; // Kills workers that exceed the shard timeout
+    private final List<ShardTiming> lastTimings; // Timings of the shards of the last render
+
+    /**
+     * The timing of one shard of a render.
+     */
+    public static class ShardTiming {
+        private final int tileRowStart;
+        private final int attempts;
+        private final long workerNanos;
+        private final long roundTripNanos;
+
+        private ShardTiming(int tileRowStart, int attempts, long workerNanos, long roundTripNanos) {
+            this.tileRowStart = tileRowStart;
+            this.attempts = attempts;
+            this.workerNanos = workerNanos;
+            this.roundTripNanos = roundTripNanos;
+        }
+
+        /**
+         * @return The first tile row of the shard.
+         */
+        public int getTileRowStart() {
+            return tileRowStart;
+        }
+
+        /**
+         * @return The number of attempts the shard took, 1 if it succeeded the first time.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * @return The time the successful worker spent decoding and matching, in milliseconds.
+         */
+        public double getWorkerMillis() {
+            return workerNanos / NANOS_IN_MILLI;
+        }
+
+        /**
+         * @return The time from sending the shard to receiving its rows, in milliseconds.
+         */
+        public double getRoundTripMillis() {
+            return roundTripNanos / NANOS_IN_MILLI;
+        }
+    }
+
+    /**
+     * A shard that is waiting to be rendered.
+     */
+    private static class Shard {
+        private final int tileRowStart;
+        private final int tileRowCount;
+        private int attempts;
+
+        private Shard(int tileRowStart, int tileRowCount) {
+            this.tileRowStart = tileRowStart;
+            this.tileRowCount = tileRowCount;
+        }
+    }
+
+    /**
+     * The deadline of one shard on a worker. The shard finishing and the deadline expiring take the
+     * same lock, so a worker that answered in time is never killed.
+     */
+    private static class Deadline {
+        private final Process process;
+        private boolean finished;
+        private boolean expired;
+
+        private Deadline(Process process) {
+            this.process = process;
+        }
+
+        private synchronized void expire() {
+            if (!finished) {
+                process.destroyForcibly();
+                expired = true;
+            }
+        }
+
+        /**
+         * Marks the shard finished, so that the deadline no longer kills the worker.
+         *
+         * @return Whether the deadline had already expired and killed the worker.
+         */
+        private synchronized boolean finish() {
+            finished = true;
+            return expired;
+        }
+    }
+
+    /**
+     * A worker process and the streams to it.
+     */
+    private static class Worker {
+        private Process process;
+        private DataOutputStream toWorker;
+        private DataInputStream fromWorker;
+    }
+
+    /**
+     * Constructs a ShardCoordinator with default retries and timeout.
+     *
+     * @param numWorkers The number of worker processes.
+     */
+    public ShardCoordinator(int numWorkers) {
+        this(numWorkers, DEFAULT_MAX_RETRIES, DEFAULT_SHARD_TIMEOUT_MILLIS, Collections.emptyList());
+    }
+
+    /**
+     * Constructs a ShardCoordinator.
+     *
+     * @param numWorkers         The number of worker processes, and of shards.
+     * @param maxRetries         How many times a failed shard is retried.
+     * @param shardTimeoutMillis How long a worker may take for one shard.
+     * @param workerJvmOptions   Extra options of the worker JVMs, such as -Xmx.
+     */
+    public ShardCoordinator(int numWorkers, int maxRetries, long shardTimeoutMillis,
+                            List<String> workerJvmOptions) {
+        if (numWorkers < 1 || maxRetries < 0 || shardTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Invalid shard coordinator settings");
+        }
+        this.numWorkers = numWorkers;
+        this.maxRetries = maxRetries;
+        this.shardTimeoutMillis = shardTimeoutMillis;
+        this.workerJvmOptions = new ArrayList<>(workerJvmOptions);
+        this.workers = new Worker[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i] = new Worker();
+        }
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastTimings = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    /**
+     * Renders an image across the workers and writes the result to an output.
+     *
+     * @param imageName  The image file.
+     * @param resolution The resolution.
+     * @param charset    The set of characters to use.
+     * @param rounding   The rounding method.
+     * @param output     The output the reassembled art is written to.
+     * @throws IOException If the image cannot be read or a shard failed on every attempt.
+     */
+    public void render(String imageName, int resolution, Set<Character> charset, String rounding,
+                       AsciiOutput output) throws IOException {
+        output.out(render(imageName, resolution, charset, rounding));
+    }
+
+    /**
+     * Renders an image across the workers.
+     *
+     * @param imageName  The image file.
+     * @param resolution The resolution.
+     * @param charset    The set of characters to use.
+     * @param rounding   The rounding method.
+     * @return A 2D array of characters representing the ASCII art.
+     * @throws IOException If the image cannot be read or a shard failed on every attempt.
+     */
+    public char[][] render(String imageName, int resolution, Set<Character> charset, String rounding)
+            throws IOException {
+        Dimension dimensions = Image.readDimensions(imageName);
+        int paddedWidth = ImagePaddingManager.nextPowerOfTwo(dimensions.width);
+        int paddedHeight = ImagePaddingManager.nextPowerOfTwo(dimensions.height);
+        if (resolution < 1 || resolution > paddedWidth || paddedWidth % resolution != 0) {
+            throw new IllegalArgumentException("Invalid resolution: " + resolution);
+        }
+        int numTileRows = paddedHeight / (paddedWidth / resolution);
+        String absolutePath = new File(imageName).getAbsolutePath();
+        StringBuilder chars = new StringBuilder();
+        for (char c : charset) {
+            chars.append(c);
+        }
+
+        int tileRowsPerShard = (numTileRows + numWorkers - 1) / numWorkers;
+        ConcurrentLinkedQueue<Shard> pending = new ConcurrentLinkedQueue<>();
+        for (int start = 0; start < numTileRows; start += tileRowsPerShard) {
+            pending.add(new Shard(start, Math.min(tileRowsPerShard, numTileRows - start)));
+        }
+        char[][] art = new char[numTileRows][];
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        lastTimings.clear();
+
+        ExecutorService drivers = Executors.newFixedThreadPool(numWorkers);
+        for (Worker worker : workers) {
+            drivers.execute(() -> {
+                Shard shard;
+                while (failure.get() == null && (shard = pending.poll()) != null) {
+                    try {
+                        runShard(worker, shard, absolutePath, resolution, rounding, chars.toString(), art);
+                    } catch (IOException e) {
+                        stopWorker(worker);
+                        if (shard.attempts <= maxRetries) {
+                            pending.add(shard);
+                        } else {
+                            failure.compareAndSet(null, new IOException("Shard at tile row " +
+                                    shard.tileRowStart + " failed after " + shard.attempts + " attempts", e));
+                        }
+                    }
+                }
+            });
+        }
+        drivers.shutdown();
+        try {
+            drivers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering shards", e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        lastTimings.sort(Comparator.comparingInt(ShardTiming::getTileRowStart));
+        return art;
+    }
+
+    /**
+     * @return The timings of the shards of the last render, in tile row order.
+     */
+    public List<ShardTiming> getLastTimings() {
+        return new ArrayList<>(lastTimings);
+    }
+
+    /**
+     * Stops all worker processes.
+     */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            if (worker.process != null && worker.process.isAlive()) {
+                try {
+                    worker.toWorker.writeInt(ShardWorker.STOP);
+                    worker.toWorker.flush();
+                } catch (IOException e) {
+                    // The worker is already gone
+                }
+            }
+            stopWorker(worker);
+        }
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * Sends a shard to a worker, starting the worker if needed, and stores the rows it returns.
+     * The watchdog kills the worker if it does not answer in time, which fails the read.
+     * The shard's first tile row doubles as its id.
+     */
+    private void runShard(Worker worker, Shard shard, String imageName, int resolution, String rounding,
+                          String chars, char[][] art) throws IOException {
+        shard.attempts++;
+        if (worker.process == null || !worker.process.isAlive()) {
+            startWorker(worker);
+        }
+        Deadline deadline = new Deadline(worker.process);
+        ScheduledFuture<?> timeout = watchdog.schedule(deadline::expire, shardTimeoutMillis,
+                TimeUnit.MILLISECONDS);
+        try {
+            long start = System.nanoTime();
+            DataOutputStream toWorker = worker.toWorker;
+            toWorker.writeInt(shard.tileRowStart);
+            toWorker.writeUTF(imageName);
+            toWorker.writeInt(shard.tileRowCount);
+            toWorker.writeInt(resolution);
+            toWorker.writeUTF(rounding);
+            toWorker.writeUTF(chars);
+            toWorker.flush();
+
+            DataInputStream fromWorker = worker.fromWorker;
+            if (fromWorker.readInt() != shard.tileRowStart) {
+                throw new IOException("Worker answered for another shard");
+            }
+            long workerNanos = fromWorker.readLong();
+            int numRows = fromWorker.readInt();
+            int numCols = fromWorker.readInt();
+            if (numRows != shard.tileRowCount || numCols != resolution) {
+                throw new IOException("Worker returned a shard of the wrong size");
+            }
+            char[][] rows = new char[numRows][numCols];
+            for (char[] row : rows) {
+                for (int col = 0; col < numCols; col++) {
+                    row[col] = fromWorker.readChar();
+                }
+            }
+            System.arraycopy(rows, 0, art, shard.tileRowStart, numRows);
+            lastTimings.add(new ShardTiming(shard.tileRowStart, shard.attempts, workerNanos,
+                    System.nanoTime() - start));
+        } finally {
+            if (deadline.finish()) {
+                stopWorker(worker);
+            }
+            timeout.cancel(false);
+        }
+    }
+
+    private void startWorker(Worker worker) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Djava.awt.headless=true");
+        command.addAll(workerJvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        worker.process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        worker.toWorker = new DataOutputStream(new BufferedOutputStream(worker.process.getOutputStream()));
+        worker.fromWorker = new DataInputStream(new BufferedInputStream(worker.process.getInputStream()));
+    }
+
+    private static void stopWorker(Worker worker) {
+        if (worker.process != null) {
+            worker.process.destroyForcibly();
+            worker.process = null;
+        }
+    }
+
+    /**
+     * Renders an image from the command line and prints the shard timings.
+     *
+     * @param args The image, the resolution, optionally the number of workers and an HTML file.
+     * @throws IOException If the render fails.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ShardCoordinator <image> <resolution> [workers] [out.html]");
+            return;
+        }
+        int numWorkers = args.length > 2 ? Integer.parseInt(args[2]) :
+                Runtime.getRuntime().availableProcessors();
+        AsciiOutput output = args.length > 3 ? new HtmlAsciiOutput(args[3], DEFAULT_FONT) :
+                new ConsoleAsciiOutput();
+        Set<Character> charset = new TreeSet<>();
+        for (char c : DEFAULT_CHARS.toCharArray()) {
+            charset.add(c);
+        }
+        try (ShardCoordinator coordinator = new ShardCoordinator(numWorkers)) {
+            long start = System.nanoTime();
+            coordinator.render(args[0], Integer.parseInt(args[1]), charset, DEFAULT_ROUNDING, output);
+            long elapsed = System.nanoTime() - start;
+            for (ShardTiming timing : coordinator.getLastTimings()) {
+                System.err.printf("shard at tile row %d: worker %.1f ms, round trip %.1f ms, %d attempt(s)%n",
+                        timing.getTileRowStart(), timing.getWorkerMillis(), timing.getRoundTripMillis(),
+                        timing.getAttempts());
+            }
+            System.err.printf("total %.1f ms with %d workers%n", elapsed / NANOS_IN_MILLI, numWorkers);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ascii_art;
+
+import image.Image;
+import image.ImagePaddingManager;
+import image.SubImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ShardWorker class is the child process of the ShardCoordinator.
+ * It reads shard specs from standard input, renders each shard from its own band of the image, which
+ * it decodes once, and writes the rows back on standard output, until it is told to stop or its input
+ * is closed.
+ * Standard output carries only the protocol, so nothing else may be printed to it.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class ShardWorker {
+
+    /**
+     * Shard id that tells the worker to exit.
+     */
+    static final int STOP = -1;
+
+    /**
+     * Runs the worker.
+     *
+     * @param args Unused.
+     * @throws IOException If the coordinator cannot be read from or written to.
+     */
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+        Map<String, SubImgCharMatcher> matchers = new HashMap<>(); // By charset and rounding
+        while (true) {
+            int shardId;
+            try {
+                shardId = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (shardId == STOP) {
+                return;
+            }
+            int tileRowStart = shardId; // A shard is identified by its first tile row
+            String imageName = in.readUTF();
+            int tileRowCount = in.readInt();
+            int resolution = in.readInt();
+            String rounding = in.readUTF();
+            String charset = in.readUTF();
+
+            long start = System.nanoTime();
+            SubImgCharMatcher matcher = matchers.computeIfAbsent(rounding + charset, key -> {
+                SubImgCharMatcher created = new SubImgCharMatcher(charset.toCharArray());
+                created.setRoundingMethod(rounding);
+                return created;
+            });
+            int paddedWidth = ImagePaddingManager.nextPowerOfTwo(Image.readDimensions(imageName).width);
+            int squareSize = paddedWidth / resolution;
+            Image band = ImagePaddingManager.readPaddedBand(imageName, tileRowStart * squareSize,
+                    tileRowCount * squareSize);
+            char[][] rows = new AsciiArtAlgorithm(band, resolution, matcher.getCharSet(), matcher,
+                    SubImageManager.newInstance(band)).run();
+
+            out.writeInt(shardId);
+            out.writeLong(System.nanoTime() - start);
+            out.writeInt(rows.length);
+            out.writeInt(resolution);
+            for (char[] row : rows) {
+                for (char c : row) {
+                    out.writeChar(c);
+                }
+            }
+            out.flush();
+        }
+    }
+}
@@ -2,18 +2,31 @@ package ascii_art;
 
 import ascii_output.AsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
-import ascii_output.HtmlAsciiOutput;
+import image.BrightnessPrecomputeService;
 import image.Image;
 import image.ImagePaddingManager;
 import image.SubImageManager;
 import image_char_matching.SubImgCharMatcher;
 
+import java.awt.*;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
 
 /**
  * The Shell class provides a command-line interface for generating ASCII art from images.
  * It supports various commands to manipulate the character set, resolution, output method, and more.
+ * In script mode the commands are read from a file or from standard input, without prompts, and the
+ * outputs are written in the background, so that writing one ASCII art overlaps rendering the next.
+ * Outputs are created by {@link OutputFactory} and written through an {@link OutputQueue}; the last
+ * ASCII art is kept in a {@link RenderCache}, and the character set commands are handled by
+ * {@link CharsetCommands}.
  *
  * @ Author: Hadas Elezre
  */
@@ -29,23 +42,43 @@ public class Shell {
     private static final String COMMAND_ROUND = "round"; // Command to change the rounding method.
     private static final String COMMAND_OUTPUT = "output"; //Command to change the output method.
     private static final String COMMAND_ASCII_ART = "asciiArt"; //Command to generate ASCII art.
-
-    // Character range
-    private static final char MIN_CHAR = 32; // Minimum ASCII value for characters.
-    private static final char MAX_CHAR = 127; // Maximum ASCII value for characters.
+    private static final String COMMAND_BUDGET = "budget"; //Command to set a render time budget.
+    private static final String BUDGET_OFF = "off"; // Argument that disables the time budget.
+    private static final String BUDGET_PROGRESSIVE = "progressive"; // Option for progressive refinement.
+    private static final long MAX_BUDGET_MILLIS = 3_600_000L; // Largest time budget, one hour.
+    private static final String COMMAND_DITHER = "dither"; //Command to toggle error-diffusion dithering.
+    private static final String COMMAND_SAMPLE = "sample"; //Command to toggle sampled tile brightness.
+    private static final String SAMPLE_CHECK = "check"; // Sampling argument that also reports mismatches.
+    private static final String COMMAND_LAYOUT = "layout"; //Command to choose the pixel layout of tiles.
+    private static final String LAYOUT_TILES = "tiles"; // Layout argument for the tile-major layout.
+    private static final String LAYOUT_ROWS = "rows"; // Layout argument for the row-major layout.
+    private static final String COMMAND_PRECOMPUTE = "precompute"; //Command to control grid precomputation.
+    private static final String COMMAND_VARIANTS = "variants"; //Command to render with every rounding method.
+    private static final String[] ROUNDING_METHODS = {"up", "down", "abs"}; // Rounding methods of 'variants'.
+    private static final String SCRIPT_OPTION = "--script"; // Argument that runs commands from a script.
+    private static final String STDIN_SCRIPT = "-"; // Script name that reads commands from standard input.
 
     //default args:
     private static final int DEFAULT_RESOLUTION = 2; // Default resolution
     private static final String DEFAULT_ROUNDING = "abs"; // Default rounding method
     private static final char[] DEFAULT_CHARS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'}; //
     // Default character set
-    private static final String DEFAULT_FONT = "Courier New"; // Default font for HTML output
+    private static final String HEADLESS_PROPERTY = "java.awt.headless"; // AWT headless mode property
+    private static final String MEMORY_BUDGET_PROPERTY = "ascii_art.memoryBudget"; // Budget in bytes
+    private static final String PRECOMPUTE_BUDGET_PROPERTY = "ascii_art.precomputeBudget"; // Cap in bytes
+    private static final int PRECOMPUTE_MEMORY_SHARE = 8; // Default cap, as a fraction of the heap
+    private static final long DITHER_BYTES_PER_TILE = Double.BYTES; // The diffused error of a tile
+    private static final long SAMPLE_CHECK_BYTES_PER_TILE = Double.BYTES + Character.BYTES; // Exact grid and art
 
     //fields:
     /**
      * The matcher for matching brightness to characters.
      */
     private final SubImgCharMatcher charMatcher;
+    /**
+     * The handler of the commands that change and print the character set.
+     */
+    private final CharsetCommands charsetCommands;
     /**
      * The current resolution for the ASCII art.
      */
@@ -54,6 +87,67 @@ public class Shell {
      * The current output method for the ASCII art.
      */
     private AsciiOutput output;
+    /**
+     * The name of the current output method, as given to the 'output' command.
+     */
+    private String outputKind = "console";
+    /**
+     * The file the current output writes to, or null if it writes to the terminal.
+     */
+    private String outputFile;
+    /**
+     * Whether the output colors each character by its tile's average color.
+     */
+    private boolean colorOutput;
+    /**
+     * The render time budget in milliseconds, or 0 if renders use the fixed resolution.
+     */
+    private long budgetMillis;
+    /**
+     * Whether budgeted renders deliver a coarse result first and refine it.
+     */
+    private boolean progressive;
+    /**
+     * The renderer used when a time budget is set.
+     */
+    private AdaptiveResolutionRenderer adaptiveRenderer;
+    /**
+     * The renderer of the 'variants' command.
+     */
+    private MultiVariantRenderer variantRenderer;
+    /**
+     * Whether the ASCII art is rendered with error-diffusion dithering.
+     */
+    private boolean dithering;
+    /**
+     * The tile brightness mode: "off" for exact, "on" for sampled, "check" for sampled with a report
+     * of the tiles that differ from the exact brightness.
+     */
+    private String sampling = "off";
+    /**
+     * The admission controller the image load, the loaded image and every render reserve memory with.
+     */
+    private final RenderAdmissionController admissionController;
+    /**
+     * The service computing brightness grids of the other resolutions in the background.
+     */
+    private BrightnessPrecomputeService precomputeService;
+    /**
+     * The memory set aside for the precomputed grids while precomputation is on, or null.
+     */
+    private RenderAdmissionController.Reservation precomputeReservation;
+    /**
+     * Whether brightness grids are precomputed in the background.
+     */
+    private boolean precomputing = true;
+    /**
+     * The queue outputs and messages are written through.
+     */
+    private final OutputQueue outputQueue = new OutputQueue();
+    /**
+     * The last ASCII art rendered, reused while the settings do not change.
+     */
+    private final RenderCache renderCache = new RenderCache();
 
     /**
      * Constructs a Shell instance with default settings.
@@ -63,6 +157,9 @@ public class Shell {
         this.output = new ConsoleAsciiOutput();
         this.charMatcher = new SubImgCharMatcher(DEFAULT_CHARS);
         charMatcher.setRoundingMethod(DEFAULT_ROUNDING);
+        this.charsetCommands = new CharsetCommands(charMatcher);
+        this.admissionController = new RenderAdmissionController(
+                Long.getLong(MEMORY_BUDGET_PROPERTY, Runtime.getRuntime().maxMemory()), 0);
     }
 
     /**
@@ -71,154 +168,189 @@ public class Shell {
      * @param imageName The name of the image file.
      */
     public void run(String imageName) {
-        Image inputImage;
+        runSession(imageName, () -> {
+            System.out.print(COMMAND_PREFIX);
+            return KeyboardInput.readLine();
+        });
+    }
+
+    /**
+     * Runs the commands of a script on the specified image, without prompts.
+     * Commands are executed in order; outputs and messages are written, also in order, on a
+     * background thread, so that writing one ASCII art overlaps rendering the next. Blank lines and
+     * lines starting with '#' are skipped. Returns once every output is written.
+     *
+     * @param imageName The name of the image file.
+     * @param script    The script to read commands from.
+     */
+    public void runScript(String imageName, BufferedReader script) {
+        outputQueue.startBackground();
+        try {
+            runSession(imageName, new ScriptReader(script));
+        } finally {
+            try {
+                outputQueue.stopBackground();
+            } catch (CommandException e) {
+                println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Loads the image and executes commands until the exit command or the end of the commands.
+     *
+     * @param imageName The name of the image file.
+     * @param commands  The source of the commands.
+     */
+    private void runSession(String imageName, CommandReader commands) {
+        RenderAdmissionController.Reservation imageReservation = null;
         try {
-            inputImage = new Image(imageName);
-            Image paddedImage = ImagePaddingManager.padImageToPowerOfTwo(inputImage);
+            Image paddedImage;
+            RenderAdmissionController.Reservation loading = admissionController.admit(imageName, resolution, 0);
+            try {
+                paddedImage = ImagePaddingManager.padImageToPowerOfTwo(new Image(imageName));
+            } finally {
+                loading.close();
+            }
+            // The padded image stays loaded for the whole session; each render reserves its own memory.
+            imageReservation = reserve(RenderAdmissionController.estimateImageBytes(paddedImage.getWidth(),
+                    paddedImage.getHeight()));
             SubImageManager subImageManager = SubImageManager.getInstance(paddedImage);
+            adaptiveRenderer = new AdaptiveResolutionRenderer(paddedImage, charMatcher, subImageManager);
+            variantRenderer = new MultiVariantRenderer(subImageManager, paddedImage.getWidth(),
+                    paddedImage.getHeight());
+            // The precomputed grids count against the memory budget, so they get no more than is free.
+            long precomputeCap = Math.min(Long.getLong(PRECOMPUTE_BUDGET_PROPERTY,
+                    Runtime.getRuntime().maxMemory() / PRECOMPUTE_MEMORY_SHARE),
+                    admissionController.getBudgetBytes() - admissionController.getReservedBytes());
+            precomputeService = new BrightnessPrecomputeService(subImageManager, paddedImage.getWidth(),
+                    paddedImage.getHeight(), Math.max(0, precomputeCap));
+            if (precomputing) {
+                startPrecompute();
+            }
 
-            System.out.print(COMMAND_PREFIX);
-            String command = KeyboardInput.readLine();
-
-            while (!command.equals(COMMAND_EXIT)) {
-
-                try {
-                    String[] parts = command.split("\\s+", 3);
-                    String baseCommand = parts[0];
-                    String arguments = parts.length > 1 ? parts[1] : "";
-
-                    switch (baseCommand) {
-                        case COMMAND_CHARS:
-                            printSortedChars();
-                            break;
-                        case COMMAND_ADD:
-                            handleAdd(arguments);
-                            break;
-                        case COMMAND_REMOVE:
-                            handleRemove(arguments);
-                            break;
-                        case COMMAND_RES:
-                            handleResolution(arguments, paddedImage);
-                            break;
-                        case COMMAND_ROUND:
-                            handleRounding(arguments);
-                            break;
-                        case COMMAND_OUTPUT:
-                            handleOutput(arguments);
-                            break;
-                        case COMMAND_ASCII_ART:
-                            handleAsciiArt(paddedImage, subImageManager);
-                            break;
-                        default:
-                            throw new CommandException("Did not execute due to incorrect command.");
-                    }
-                } catch (IOException | CommandException | ResolutionException e) {
-                    System.out.println(e.getMessage());
-                }
-                System.out.print(COMMAND_PREFIX);
-                command = KeyboardInput.readLine();
+            String command = commands.readLine();
+            while (command != null && !command.equals(COMMAND_EXIT)) {
+                executeCommand(command, paddedImage, subImageManager);
+                command = commands.readLine();
             }
         } catch (IOException e) {
-            System.out.println("Did not execute due to incorrect command.");
+            println("Did not execute due to incorrect command.");
+        } catch (AdmissionException | CommandException e) {
+            println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (variantRenderer != null) {
+                variantRenderer.close();
+                variantRenderer = null;
+            }
+            if (precomputeService != null) {
+                precomputeService.shutdown();
+                precomputeService = null;
+            }
+            if (precomputeReservation != null) {
+                precomputeReservation.close();
+                precomputeReservation = null;
+            }
+            if (imageReservation != null) {
+                imageReservation.close();
+            }
         }
     }
 
     /**
-     * The main method to start the shell.
+     * Executes a single command, printing its error message if it fails.
      *
-     * @param args The arguments.
+     * @param command         The command line.
+     * @param paddedImage     The padded image.
+     * @param subImageManager The manager for handling sub-images of the padded image.
      */
-    public static void main(String[] args) {
-        Shell shell = new Shell();
-        shell.run(args[0]);
+    private void executeCommand(String command, Image paddedImage, SubImageManager subImageManager) {
+        try {
+            String[] parts = command.split("\\s+", 3);
+            String baseCommand = parts[0];
+            String arguments = parts.length > 1 ? parts[1] : "";
+            String options = parts.length > 2 ? parts[2] : "";
+
+            switch (baseCommand) {
+                case COMMAND_CHARS:
+                    println(charsetCommands.sortedChars());
+                    break;
+                case COMMAND_ADD:
+                    charsetCommands.add(arguments);
+                    break;
+                case COMMAND_REMOVE:
+                    charsetCommands.remove(arguments);
+                    break;
+                case COMMAND_RES:
+                    handleResolution(arguments, paddedImage);
+                    break;
+                case COMMAND_ROUND:
+                    handleRounding(arguments);
+                    break;
+                case COMMAND_OUTPUT:
+                    handleOutput(arguments);
+                    break;
+                case COMMAND_ASCII_ART:
+                    handleAsciiArt(paddedImage, subImageManager, arguments);
+                    break;
+                case COMMAND_BUDGET:
+                    handleBudget(arguments, options);
+                    break;
+                case COMMAND_DITHER:
+                    handleDither(arguments);
+                    break;
+                case COMMAND_SAMPLE:
+                    handleSample(arguments);
+                    break;
+                case COMMAND_LAYOUT:
+                    handleLayout(arguments, subImageManager);
+                    break;
+                case COMMAND_PRECOMPUTE:
+                    handlePrecompute(arguments, paddedImage);
+                    break;
+                case COMMAND_VARIANTS:
+                    handleVariants(paddedImage, arguments);
+                    break;
+                default:
+                    throw new CommandException("Did not execute due to incorrect command.");
+            }
+        } catch (IOException | CommandException | ResolutionException | AdmissionException e) {
+            println(e.getMessage());
+        }
     }
 
     /**
-     * Handles the 'add' command to add characters to the character set.
+     * Prints a message, after every output and message before it.
      *
-     * @param arguments The arguments for the 'add' command.
-     * @throws CommandException If the format is incorrect.
+     * @param message The message.
      */
-    private void handleAdd(String arguments) throws CommandException {
-        if (arguments.isEmpty()) {
-            throw new CommandException("Did not add due to incorrect format.");
-        }
-        if (arguments.equals("all")) {
-            for (char c = MIN_CHAR; c <= MAX_CHAR; c++) {
-                charMatcher.addChar(c);
-            }
-        } else if (arguments.equals("space")) {
-            charMatcher.addChar(' ');
-        } else if (arguments.length() == 1) {
-            char c = arguments.charAt(0);
-            if (c >= MIN_CHAR && c < MAX_CHAR) {
-                charMatcher.addChar(c);
-            } else {
-                throw new CommandException("Did not add due to incorrect format.");
-            }
-        } else if (arguments.matches(".-.")) {
-            char start = arguments.charAt(0);
-            char end = arguments.charAt(2);
-            if (start >= MIN_CHAR && end >= MIN_CHAR && start < MAX_CHAR && end < MAX_CHAR) {
-                if (start <= end) {
-                    for (char c = start; c <= end; c++) {
-                        charMatcher.addChar(c);
-                    }
-                } else {
-                    for (char c = start; c >= end; c--) {
-                        charMatcher.addChar(c);
-                    }
-                }
-            } else {
-                throw new CommandException("Did not add due to incorrect format.");
-            }
-        } else {
-            throw new CommandException("Did not add due to incorrect format.");
-        }
+    private void println(String message) {
+        outputQueue.println(message);
     }
 
     /**
-     * Handles the 'remove' command to remove characters from the character set.
+     * The main method to start the shell.
      *
-     * @param arguments The arguments for the 'remove' command.
-     * @throws CommandException If the format is incorrect.
+     * @param args The arguments.
      */
-    private void handleRemove(String arguments) throws CommandException {
-        if (arguments.isEmpty()) {
-            throw new CommandException("Did not remove due to incorrect format.");
+    public static void main(String[] args) {
+        // Glyphs are only rasterized off-screen, so there is no need to start a display connection.
+        if (System.getProperty(HEADLESS_PROPERTY) == null) {
+            System.setProperty(HEADLESS_PROPERTY, "true");
         }
-        if (arguments.equals("all")) {
-            Character[] charArray = charMatcher.getCharSet().toArray(new Character[0]);
-            for (Character c : charArray) {
-                charMatcher.removeChar(c);
-            }
-        } else if (arguments.equals("space")) {
-            charMatcher.removeChar(' ');
-        } else if (arguments.length() == 1) {
-            char c = arguments.charAt(0);
-            if (c >= MIN_CHAR && c <= MAX_CHAR) {
-                charMatcher.removeChar(c);
-            } else {
-                throw new CommandException("Did not remove due to incorrect format.");
-            }
-        } else if (arguments.matches(".-.")) {
-            char start = arguments.charAt(0);
-            char end = arguments.charAt(2);
-            if (start >= MIN_CHAR && end >= MIN_CHAR && start <= MAX_CHAR && end <= MAX_CHAR) {
-                if (start <= end) {
-                    for (char c = start; c <= end; c++) {
-                        charMatcher.removeChar(c);
-                    }
-                } else {
-                    for (char c = start; c >= end; c--) {
-                        charMatcher.removeChar(c);
-                    }
-                }
-            } else {
-                throw new CommandException("Did not remove due to incorrect format.");
+        Shell shell = new Shell();
+        if (args.length > 1 && args[1].equals(SCRIPT_OPTION)) {
+            String script = args.length > 2 ? args[2] : STDIN_SCRIPT;
+            try (BufferedReader reader = script.equals(STDIN_SCRIPT) ?
+                    new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) : Files.newBufferedReader(Paths.get(script))) {
+                shell.runScript(args[0], reader);
+            } catch (IOException e) {
+                System.out.println("Did not execute due to incorrect script.");
             }
         } else {
-            throw new CommandException("Did not remove due to incorrect format.");
+            shell.run(args[0]);
         }
     }
 
@@ -236,24 +368,31 @@ public class Shell {
         int maxResolution = image.getWidth();
 
         if (arguments.isEmpty()) {
-            System.out.println("Resolution set to " + resolution + ".");
+            println("Resolution set to " + resolution + ".");
         } else if (arguments.equals("up")) {
             if (resolution * 2 <= maxResolution) {
                 resolution *= 2;
-                System.out.println("Resolution set to " + resolution + ".");
+                println("Resolution set to " + resolution + ".");
             } else {
                 throw new ResolutionException("Did not change resolution due to exceeding boundaries.");
             }
         } else if (arguments.equals("down")) {
             if (resolution / 2 >= minResolution) {
                 resolution /= 2;
-                System.out.println("Resolution set to " + resolution + ".");
+                println("Resolution set to " + resolution + ".");
             } else {
                 throw new ResolutionException("Did not change resolution due to exceeding boundaries.");
             }
         } else {
             throw new CommandException("Did not change resolution due to incorrect format.");
         }
+        // Sweep outward from the new resolution if its grid is not scheduled, or only queued. A grid
+        // that is ready or being computed needs no sweep, and neither does a skipped one: the memory
+        // cap is fixed and ready grids are kept, so it stays skipped until the grids are invalidated.
+        BrightnessPrecomputeService.State state = precomputeService.getState(resolution);
+        if (precomputing && (state == null || state == BrightnessPrecomputeService.State.QUEUED)) {
+            precomputeService.start(resolution);
+        }
     }
 
     /**
@@ -265,7 +404,7 @@ public class Shell {
     private void handleRounding(String arguments) throws CommandException {
         if (arguments.equals("up") || arguments.equals("down") || arguments.equals("abs")) {
             charMatcher.setRoundingMethod(arguments);
-            System.out.println("Rounding method set to " + arguments + ".");
+            println("Rounding method set to " + arguments + ".");
         } else {
             throw new CommandException("Did not change rounding method due to incorrect format.");
         }
@@ -278,43 +417,381 @@ public class Shell {
      * @throws CommandException If the format is incorrect.
      */
     private void handleOutput(String arguments) throws CommandException {
-        if (arguments.equals("console")) {
-            this.output = new ConsoleAsciiOutput();
-            System.out.println("Output set to console.");
-        } else if (arguments.equals("html")) {
-            this.output = new HtmlAsciiOutput("out.html", DEFAULT_FONT);
-            System.out.println("Output set to html.");
+        String fileName = OutputFactory.defaultFile(arguments);
+        this.output = OutputFactory.create(arguments, fileName);
+        this.outputKind = arguments;
+        this.outputFile = fileName;
+        this.colorOutput = OutputFactory.isColored(arguments);
+        println("Output set to " + arguments + ".");
+    }
+
+    /**
+     * Handles the 'budget' command to set a render time budget.
+     * With a budget, 'asciiArt' renders at the highest resolution estimated to fit in it.
+     * Budgets above an hour are capped to an hour.
+     *
+     * @param arguments The budget in milliseconds, or "off".
+     * @param options   Optionally "progressive", to deliver a coarse result first.
+     * @throws CommandException If the format is incorrect.
+     */
+    private void handleBudget(String arguments, String options) throws CommandException {
+        if (arguments.isEmpty()) {
+            println(budgetMillis == 0 ? "Budget is off." : "Budget set to " + budgetMillis + " ms.");
+            return;
+        }
+        if (arguments.equals(BUDGET_OFF)) {
+            budgetMillis = 0;
+            println("Budget is off.");
+            return;
+        }
+        long millis;
+        try {
+            millis = Long.parseLong(arguments);
+        } catch (NumberFormatException e) {
+            throw new CommandException("Did not change budget due to incorrect format.");
+        }
+        if (!arguments.matches("\\d+") || millis == 0 ||
+                !(options.isEmpty() || options.equals(BUDGET_PROGRESSIVE))) {
+            throw new CommandException("Did not change budget due to incorrect format.");
+        }
+        budgetMillis = Math.min(millis, MAX_BUDGET_MILLIS);
+        progressive = !options.isEmpty();
+        println("Budget set to " + budgetMillis + " ms.");
+    }
+
+    /**
+     * Handles the 'dither' command to toggle error-diffusion dithering.
+     *
+     * @param arguments The arguments for the 'dither' command ("on" or "off").
+     * @throws CommandException If the format is incorrect.
+     */
+    private void handleDither(String arguments) throws CommandException {
+        if (arguments.equals("on") || arguments.equals("off")) {
+            dithering = arguments.equals("on");
+            println("Dithering set to " + arguments + ".");
+        } else {
+            throw new CommandException("Did not change dithering due to incorrect format.");
+        }
+    }
+
+    /**
+     * Handles the 'sample' command to toggle sampled tile brightness.
+     *
+     * @param arguments The arguments for the 'sample' command ("on", "off" or "check").
+     * @throws CommandException If the format is incorrect.
+     */
+    private void handleSample(String arguments) throws CommandException {
+        if (arguments.equals("on") || arguments.equals("off") || arguments.equals(SAMPLE_CHECK)) {
+            sampling = arguments;
+            println("Sampling set to " + arguments + ".");
+        } else {
+            throw new CommandException("Did not change sampling due to incorrect format.");
+        }
+    }
+
+    /**
+     * Handles the 'layout' command to choose the pixel layout tile brightness is computed from.
+     *
+     * @param arguments       The arguments for the 'layout' command ("tiles" or "rows").
+     * @param subImageManager The manager for handling sub-images.
+     * @throws CommandException If the format is incorrect.
+     */
+    private void handleLayout(String arguments, SubImageManager subImageManager) throws CommandException {
+        if (arguments.equals(LAYOUT_TILES) || arguments.equals(LAYOUT_ROWS)) {
+            if (subImageManager.isTileMajorLayout() != arguments.equals(LAYOUT_TILES)) {
+                subImageManager.setTileMajorLayout(arguments.equals(LAYOUT_TILES));
+                precomputeService.invalidate();
+                if (precomputing) {
+                    precomputeService.start(resolution);
+                }
+            }
+            println("Layout set to " + arguments + ".");
+        } else {
+            throw new CommandException("Did not change layout due to incorrect format.");
+        }
+    }
+
+    /**
+     * Handles the 'precompute' command to turn background precomputation of brightness grids on or
+     * off, or, without arguments, to print the readiness of every legal resolution.
+     *
+     * Turning it off drops the precomputed grids and releases the memory set aside for them.
+     *
+     * @param arguments The arguments for the 'precompute' command ("on", "off" or empty).
+     * @param image     The padded image.
+     * @throws CommandException   If the format is incorrect.
+     * @throws AdmissionException If the grids do not fit the free memory.
+     */
+    private void handlePrecompute(String arguments, Image image) throws CommandException, AdmissionException {
+        if (arguments.isEmpty()) {
+            StringBuilder status = new StringBuilder();
+            for (int res = Math.max(1, image.getWidth() / image.getHeight()); res <= image.getWidth(); res *= 2) {
+                BrightnessPrecomputeService.State state = precomputeService.getState(res);
+                status.append(res).append(':').append(state == null ? "idle" :
+                        state.name().toLowerCase()).append(' ');
+            }
+            println(status.toString().trim());
+        } else if (arguments.equals("on") || arguments.equals("off")) {
+            if (arguments.equals("on")) {
+                startPrecompute();
+            } else {
+                // Drop the grids, so that the memory set aside for them can be released.
+                precomputeService.invalidate();
+                if (precomputeReservation != null) {
+                    precomputeReservation.close();
+                    precomputeReservation = null;
+                }
+            }
+            precomputing = arguments.equals("on");
+            println("Precompute set to " + arguments + ".");
         } else {
-            throw new CommandException("Did not change output method due to incorrect format.");
+            throw new CommandException("Did not change precompute due to incorrect format.");
         }
     }
 
     /**
-     * Prints the sorted character set.
+     * Starts precomputing brightness grids from the current resolution, first setting aside with the
+     * admission controller the most memory the grids can take, unless it already is.
+     *
+     * @throws AdmissionException If the grids do not fit the free memory.
+     * @throws CommandException   If a queued write failed while awaiting the memory.
      */
-    private void printSortedChars() {
-        TreeSet<Character> sortedSet = new TreeSet<>(charMatcher.getCharSet());
-        for (char c : sortedSet) {
-            System.out.print(c + " ");
+    private void startPrecompute() throws AdmissionException, CommandException {
+        if (precomputeReservation == null) {
+            precomputeReservation = reserve(precomputeService.getMaxBytes());
         }
-        System.out.println();
+        precomputeService.start(resolution);
     }
 
     /**
      * Handles the 'asciiArt' command to generate ASCII art.
+     * If none of the settings changed since the last render, the last ASCII art is output again
+     * instead of being rendered again.
+     * The render reserves its working memory with the admission controller, and releases it once its
+     * output is written.
+     *
+     * @param image           The image to convert to ASCII art.
+     * @param subImageManager The manager for handling sub-images.
+     * @param arguments       The file to write this ASCII art to instead of the output's file, or empty.
+     * @throws IOException          If there is an error generating the ASCII art.
+     * @throws CommandException     If a file is given but the output does not write files.
+     * @throws AdmissionException If the render does not fit the free memory.
+     */
+    private void handleAsciiArt(Image image, SubImageManager subImageManager, String arguments)
+            throws IOException, CommandException, AdmissionException {
+        if (charMatcher.getCharSet().size() < 2) {
+            throw new IOException("Did not execute. Charset is too small.");
+        }
+        AsciiOutput target = output;
+        String targetFile = outputFile;
+        if (!arguments.isEmpty()) {
+            if (outputFile == null) {
+                throw new CommandException("Did not execute. The output does not write files.");
+            }
+            target = OutputFactory.create(outputKind, arguments);
+            targetFile = arguments;
+        }
+        if (budgetMillis > 0) {
+            // The renderer delivers to the output itself, possibly several times, at a resolution it
+            // only chooses while rendering; limit it to the finest resolution whose memory is free.
+            outputQueue.awaitPending();
+            int limit = Math.max(1, image.getWidth() / image.getHeight());
+            long freeBytes = admissionController.getBudgetBytes() - admissionController.getReservedBytes();
+            while (limit * 2 <= image.getWidth() && renderBytes(image, limit * 2, false, modeBytesPerTile()) <= freeBytes) {
+                limit *= 2;
+            }
+            RenderAdmissionController.Reservation reservation = reserve(renderBytes(image, limit, false,
+                    modeBytesPerTile()));
+            try {
+                AdaptiveResolutionRenderer.Result result = adaptiveRenderer.render(budgetMillis, target,
+                        progressive, colorOutput, limit);
+                println(String.format("Rendered at resolution %d in %.1f ms.", result.getResolution(),
+                        result.getElapsedMillis()));
+            } finally {
+                reservation.close();
+            }
+            return;
+        }
+        boolean subImages = !dithering && sampling.equals("off") && !subImageManager.isTileMajorLayout() &&
+                precomputeService.getReadyGrid(resolution) == null;
+        RenderAdmissionController.Reservation reservation = reserve(renderBytes(image, resolution, subImages,
+                modeBytesPerTile()));
+        try {
+            renderAndDeliver(image, subImageManager, target, targetFile, reservation);
+        } catch (RuntimeException e) {
+            reservation.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Renders the ASCII art at the current settings, or reuses the last one, and delivers it.
      *
      * @param image           The image to convert to ASCII art.
      * @param subImageManager The manager for handling sub-images.
-     * @throws IOException If there is an error generating the ASCII art.
+     * @param target          The output.
+     * @param targetFile      The file the output writes to, or null.
+     * @param reservation     The memory reservation of the render, closed once the output is written.
+     * @throws CommandException If the output is written directly and fails.
      */
-    private void handleAsciiArt(Image image, SubImageManager subImageManager) throws IOException {
+    private void renderAndDeliver(Image image, SubImageManager subImageManager, AsciiOutput target,
+                                  String targetFile, RenderAdmissionController.Reservation reservation)
+            throws CommandException {
+        String renderKey = renderKey(subImageManager);
+        char[][] art = renderCache.get(renderKey);
+        if (art == null) {
+            int mismatches = -1;
+            if (dithering) {
+                art = new ErrorDiffusionAsciiArtAlgorithm(resolution, charMatcher, subImageManager).run();
+            } else if (!sampling.equals("off")) {
+                SampledAsciiArtAlgorithm algorithm = new SampledAsciiArtAlgorithm(resolution, charMatcher,
+                        subImageManager);
+                art = algorithm.run();
+                if (sampling.equals(SAMPLE_CHECK)) {
+                    mismatches = algorithm.countMismatches(art);
+                }
+            } else {
+                AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image, resolution, charMatcher.getCharSet(),
+                        charMatcher, subImageManager);
+                double[][] readyGrid = precomputeService.getReadyGrid(resolution);
+                art = readyGrid != null ? algorithm.run(readyGrid) : algorithm.run();
+            }
+            renderCache.put(renderKey, art, mismatches);
+        }
+        Color[][] tileColors = colorOutput ? renderCache.getTileColors(subImageManager, resolution) : null;
+        outputQueue.deliver(target, targetFile, art, tileColors, reservation);
+        if (renderCache.getMismatches() >= 0) {
+            println(String.format("%d tiles differ from exact brightness (sampled at %d%% confidence).",
+                    renderCache.getMismatches(), SubImageManager.SAMPLING_CONFIDENCE_PERCENT));
+        }
+    }
+
+    /**
+     * Handles the 'variants' command to render the ASCII art at the current resolution and charset with
+     * every rounding method, from a single brightness pass, and print how long each one took to match.
+     * The variants are written to the output in turn, uncolored; an output that writes a file writes
+     * each variant to a file named after its rounding method, e.g. out-up.html.
+     *
+     * @param image     The padded image.
+     * @param arguments The arguments for the 'variants' command, which takes none.
+     * @throws IOException          If the charset is too small.
+     * @throws CommandException     If the format is incorrect.
+     * @throws AdmissionException If the renders do not fit the free memory.
+     */
+    private void handleVariants(Image image, String arguments)
+            throws IOException, CommandException, AdmissionException {
+        if (!arguments.isEmpty()) {
+            throw new CommandException("Did not execute due to incorrect format.");
+        }
         if (charMatcher.getCharSet().size() < 2) {
             throw new IOException("Did not execute. Charset is too small.");
         }
-        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image, resolution, charMatcher.getCharSet(),
-                charMatcher, subImageManager);
+        char[] charset = new char[charMatcher.getCharSet().size()];
+        int i = 0;
+        for (char c : charMatcher.getCharSet()) {
+            charset[i++] = c;
+        }
+        List<MultiVariantRenderer.Variant> variants = new ArrayList<>();
+        List<RenderAdmissionController.Reservation> reservations = new ArrayList<>();
+        MultiVariantRenderer.Result result;
+        try {
+            for (String method : ROUNDING_METHODS) {
+                variants.add(new MultiVariantRenderer.Variant(resolution, charset, method, null));
+                reservations.add(reserve(renderBytes(image, resolution, false, 0)));
+            }
+            result = variantRenderer.render(variants);
+        } catch (AdmissionException | RuntimeException e) {
+            for (RenderAdmissionController.Reservation reservation : reservations) {
+                reservation.close();
+            }
+            throw e;
+        }
+        for (i = 0; i < ROUNDING_METHODS.length; i++) {
+            MultiVariantRenderer.VariantResult variant = result.getVariants().get(i);
+            AsciiOutput target = output;
+            String targetFile = null;
+            try {
+                if (outputFile != null) {
+                    targetFile = OutputFactory.variantFile(outputFile, ROUNDING_METHODS[i]);
+                    target = OutputFactory.create(outputKind, targetFile);
+                }
+                outputQueue.deliver(target, targetFile, variant.getChars(), null, reservations.get(i));
+            } catch (CommandException e) {
+                // The failed variant's reservation is closed by now; the later ones are never delivered.
+                for (RenderAdmissionController.Reservation reservation : reservations.subList(i, reservations.size())) {
+                    reservation.close();
+                }
+                throw e;
+            }
+            println(String.format("Matched %s rounding in %.1f ms.", ROUNDING_METHODS[i],
+                    variant.getMatchMillis()));
+        }
+    }
 
-        char[][] art = algorithm.run();
-        output.out(art);
+    /**
+     * Reserves memory with the admission controller without waiting in line. Commands run one at a
+     * time, so only the writes already queued can still release memory; if the bytes do not fit, they
+     * are awaited once, and the command is rejected if the bytes still do not fit.
+     *
+     * @param bytes The number of bytes to reserve.
+     * @return The reservation.
+     * @throws AdmissionException If the bytes do not fit the free memory.
+     * @throws CommandException   If a queued write failed while awaiting them.
+     */
+    private RenderAdmissionController.Reservation reserve(long bytes) throws AdmissionException,
+            CommandException {
+        RenderAdmissionController.Reservation reservation = admissionController.tryReserve(bytes);
+        if (reservation == null) {
+            outputQueue.awaitPending();
+            reservation = admissionController.tryReserve(bytes);
+        }
+        if (reservation == null) {
+            throw new AdmissionException("Did not execute due to insufficient free memory.");
+        }
+        return reservation;
+    }
+
+    /**
+     * Estimates the working memory of rendering at a resolution to the current output.
+     *
+     * @param image            The padded image.
+     * @param resolution       The resolution.
+     * @param subImages        Whether the render divides the image into sub-images.
+     * @param modeBytesPerTile The bytes the render mode allocates per tile, beyond a plain render.
+     * @return The estimated number of bytes.
+     */
+    private long renderBytes(Image image, int resolution, boolean subImages, long modeBytesPerTile) {
+        return RenderAdmissionController.estimateRenderBytes(image.getWidth(), image.getHeight(), resolution,
+                subImages, colorOutput, OutputFactory.bytesPerTile(outputKind) + modeBytesPerTile);
+    }
+
+    /**
+     * Returns the bytes the current render mode allocates per tile beyond a plain render: the diffused
+     * error of dithering, or the exact grid and art that sampling with a check compares against.
+     *
+     * @return The number of bytes per tile.
+     */
+    private long modeBytesPerTile() {
+        if (dithering) {
+            return DITHER_BYTES_PER_TILE;
+        }
+        return sampling.equals(SAMPLE_CHECK) ? SAMPLE_CHECK_BYTES_PER_TILE : 0;
+    }
+
+    /**
+     * Returns a key of every setting the ASCII art depends on.
+     *
+     * @param subImageManager The manager for handling sub-images.
+     * @return The key.
+     */
+    private String renderKey(SubImageManager subImageManager) {
+        StringBuilder key = new StringBuilder();
+        key.append(resolution).append('|').append(charMatcher.getRoundingMethod()).append('|')
+                .append(dithering).append('|').append(sampling).append('|')
+                .append(subImageManager.isTileMajorLayout()).append('|');
+        for (char c : new TreeSet<>(charMatcher.getCharSet())) {
+            key.append(c);
+        }
+        return key.toString();
     }
 }
@@ -0,0 +1,193 @@
+package ascii_output;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output a 2D array of chars to an ANSI terminal, redrawing only what changed.
+ * The layout is the same as the console output's (each char followed by a space); wide chars take
+ * two terminal columns. The previous frame is kept, and each update moves the cursor to the cells
+ * that differ and rewrites only those, merging nearby changes into one write when rewriting the
+ * unchanged cells between them is no more bytes than the cursor move. The screen is cleared and
+ * fully redrawn only when the dimensions change.
+ * The frame is drawn from the top-left corner of the screen, so it should fit in the terminal.
+ * @ Author: Hadas Elezra
+ */
+public class AnsiDiffAsciiOutput implements AsciiOutput {
+    private static final String ESC = "\u001b[";
+    private static final String CLEAR_SCREEN = ESC + "H" + ESC + "2J";
+    private static final String CLEAR_BELOW = ESC + "J";
+    private static final String ERASE_LINE = ESC + "K";
+
+    private final PrintStream stream;
+    private char[][] previous;
+    private long lastUpdateBytes;
+
+    public AnsiDiffAsciiOutput() {
+        this(System.out);
+    }
+
+    /**
+     * @param stream the terminal's output stream
+     */
+    public AnsiDiffAsciiOutput(PrintStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        StringBuilder update = new StringBuilder();
+        if (previous == null || previous.length != chars.length || previous[0].length != chars[0].length) {
+            fullRedraw(chars, update);
+            previous = new char[chars.length][chars[0].length];
+        } else {
+            for (int y = 0; y < chars.length; y++) {
+                diffRow(y, previous[y], chars[y], update);
+            }
+            // Park the cursor below the frame and drop whatever was printed there after the last update.
+            update.append(moveTo(chars.length, 0)).append(CLEAR_BELOW);
+        }
+        for (int y = 0; y < chars.length; y++) {
+            System.arraycopy(chars[y], 0, previous[y], 0, chars[y].length);
+        }
+        byte[] bytes = update.toString().getBytes(StandardCharsets.UTF_8);
+        lastUpdateBytes = bytes.length;
+        stream.write(bytes, 0, bytes.length);
+        stream.flush();
+    }
+
+    /**
+     * @return the number of bytes written by the last update
+     */
+    public long getLastUpdateBytes() {
+        return lastUpdateBytes;
+    }
+
+    private static void fullRedraw(char[][] chars, StringBuilder update) {
+        update.append(CLEAR_SCREEN);
+        for (char[] row : chars) {
+            for (char c : row) {
+                update.append(c).append(' ');
+            }
+            update.append("\r\n");
+        }
+    }
+
+    /**
+     * Appends the writes that turn one displayed row into the next.
+     * A run of changes is extended over a gap of unchanged cells whenever rewriting the gap costs no
+     * more bytes than the cursor move that would be emitted to skip it. Once a cell changes width,
+     * every cell after it moves, so the rest of the row is rewritten and the tail of a longer row erased.
+     */
+    private static void diffRow(int y, char[] shown, char[] wanted, StringBuilder update) {
+        int[] columns = columns(wanted);
+        int shifted = wanted.length; // First cell whose width changed; it and every cell after it move
+        for (int i = 0; i < wanted.length; i++) {
+            if (width(shown[i]) != width(wanted[i])) {
+                shifted = i;
+                break;
+            }
+        }
+        int x = 0;
+        int cursor = -1; // Column the cursor is at after the last write on this row, if any
+        while (x < wanted.length) {
+            if (x < shifted && shown[x] == wanted[x]) {
+                x++;
+                continue;
+            }
+            int start = x;
+            int end = x; // Last changed cell of the run
+            int next = x + 1;
+            while (next < wanted.length) {
+                if (next >= shifted || shown[next] != wanted[next]) {
+                    end = next;
+                    next++;
+                    continue;
+                }
+                int nextChange = next;
+                while (nextChange < Math.min(wanted.length, shifted) && shown[nextChange] == wanted[nextChange]) {
+                    nextChange++;
+                }
+                if (nextChange == wanted.length) {
+                    break;
+                }
+                // Rewriting the gap writes each cell with the space before it, and the space before
+                // the next change; skipping it writes the move that would actually be emitted.
+                int gapBytes = 1;
+                for (int i = next; i < nextChange; i++) {
+                    gapBytes += 1 + utf8Length(wanted[i]);
+                }
+                int cursorAfterRun = columns[end] + width(wanted[end]);
+                if (gapBytes > cursorTo(y, columns[nextChange], cursorAfterRun).length()) {
+                    break;
+                }
+                next = nextChange;
+            }
+            update.append(cursorTo(y, columns[start], cursor));
+            for (int i = start; i <= end; i++) {
+                if (i > start) {
+                    update.append(' ');
+                }
+                update.append(wanted[i]);
+            }
+            cursor = columns[end] + width(wanted[end]);
+            x = end + 1;
+        }
+        if (shifted < wanted.length) {
+            update.append(' ');
+            if (columns(shown)[shown.length - 1] + width(shown[shown.length - 1]) >
+                    columns[wanted.length - 1] + width(wanted[wanted.length - 1])) {
+                update.append(ERASE_LINE);
+            }
+        }
+    }
+
+    /**
+     * Returns the shortest sequence that moves the cursor to a column, given the column the cursor is
+     * at on the same row, or -1 if it is elsewhere.
+     */
+    private static String cursorTo(int row, int column, int cursor) {
+        if (cursor >= 0 && cursor <= column) {
+            int forward = column - cursor;
+            if (forward == 0) {
+                return "";
+            }
+            String relative = ESC + (forward == 1 ? "" : forward) + "C";
+            String absolute = moveTo(row, column);
+            return relative.length() < absolute.length() ? relative : absolute;
+        }
+        return moveTo(row, column);
+    }
+
+    private static String moveTo(int row, int column) {
+        return ESC + (row + 1) + ";" + (column + 1) + "H";
+    }
+
+    /**
+     * Returns the terminal column each cell of a row starts at; each char is followed by a space.
+     */
+    private static int[] columns(char[] row) {
+        int[] columns = new int[row.length];
+        int column = 0;
+        for (int i = 0; i < row.length; i++) {
+            columns[i] = column;
+            column += width(row[i]) + 1;
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the number of terminal columns a char takes: 2 for East Asian wide and fullwidth
+     * chars, 1 for any other.
+     */
+    private static int width(char c) {
+        boolean wide = (c >= 0x1100 && c <= 0x115F) || (c >= 0x2E80 && c <= 0xA4CF && c != 0x303F) ||
+                (c >= 0xAC00 && c <= 0xD7A3) || (c >= 0xF900 && c <= 0xFAFF) || (c >= 0xFE30 && c <= 0xFE4F) ||
+                (c >= 0xFF00 && c <= 0xFF60) || (c >= 0xFFE0 && c <= 0xFFE6);
+        return wide ? 2 : 1;
+    }
+
+    private static int utf8Length(char c) {
+        return c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+    }
+}
@@ -0,0 +1,16 @@
+package ascii_output;
+
+import java.awt.*;
+
+/**
+ * An output that can also color each character, given the average color
+ * of the image tile the character stands for.
+ * @ Author: Hadas Elezra
+ */
+public interface ColoredAsciiOutput extends AsciiOutput {
+    /**
+     * Output the specified 2D array of chars, each in the color at the same position
+     * of tileColors.
+     */
+    void out(char[][] chars, Color[][] tileColors);
+}
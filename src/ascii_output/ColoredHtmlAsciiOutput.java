@@ -0,0 +1,187 @@
+package ascii_output;
+
+import java.awt.*;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output a 2D array of chars to an HTML file, each char in the color of its image tile.
+ * To keep the file close to the size of the monochrome output, tile colors are quantized to a
+ * small palette, the most common palette color becomes the text color of the whole page, and
+ * runs of chars of any other color share a single span with a one- or two-letter CSS class.
+ * Without tile colors the page is the same as the monochrome output's.
+ * A compressed output is written through a gzip stream.
+ * @ Author: Hadas Elezra
+ */
+public class ColoredHtmlAsciiOutput implements ColoredAsciiOutput {
+    private static final int DEFAULT_BITS_PER_CHANNEL = 2;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int MAX_RGB = 255;
+    private static final int LETTERS = 26;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String fontName;
+    private final String filename;
+    private final int bitsPerChannel;
+    private final boolean compressed;
+    /** Writes the page when there are no tile colors. */
+    private final HtmlAsciiOutput monochrome;
+
+    /**
+     * Constructs an output that is compressed if the filename ends in ".gz".
+     * @param filename the HTML file
+     * @param fontName the font of the page
+     */
+    public ColoredHtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, filename.endsWith(".gz"));
+    }
+
+    /**
+     * @param filename   the HTML file
+     * @param fontName   the font of the page
+     * @param compressed whether the file is written gzip-compressed, whatever its name
+     */
+    public ColoredHtmlAsciiOutput(String filename, String fontName, boolean compressed) {
+        this(filename, fontName, DEFAULT_BITS_PER_CHANNEL, compressed);
+    }
+
+    /**
+     * @param filename       the HTML file
+     * @param fontName       the font of the page
+     * @param bitsPerChannel the bits kept of each color channel, between 1 and 8; the palette has
+     *                       2^(3*bitsPerChannel) colors
+     * @param compressed     whether the file is written gzip-compressed, whatever its name
+     */
+    public ColoredHtmlAsciiOutput(String filename, String fontName, int bitsPerChannel, boolean compressed) {
+        if (bitsPerChannel < 1 || bitsPerChannel > BITS_PER_BYTE) {
+            throw new IllegalArgumentException("Bits per channel must be between 1 and 8");
+        }
+        this.fontName = fontName;
+        this.filename = filename;
+        this.bitsPerChannel = bitsPerChannel;
+        this.compressed = compressed;
+        this.monochrome = new HtmlAsciiOutput(filename, fontName);
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        try (BufferedWriter writer = openWriter()) {
+            monochrome.write(writer, chars);
+        } catch(IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    @Override
+    public void out(char[][] chars, Color[][] tileColors) {
+        if (tileColors == null) {
+            out(chars);
+            return;
+        }
+        int[][] palette = new int[chars.length][chars[0].length];
+        int[] counts = new int[1 << (3 * bitsPerChannel)];
+        for (int y = 0; y < chars.length; y++) {
+            for (int x = 0; x < chars[y].length; x++) {
+                palette[y][x] = quantize(tileColors[y][x]);
+                counts[palette[y][x]]++;
+            }
+        }
+        // The most common color gets no span at all, the next ones the shortest class names.
+        List<Integer> used = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                used.add(i);
+            }
+        }
+        used.sort((a, b) -> Integer.compare(counts[b], counts[a]));
+        String[] classNames = new String[counts.length];
+        for (int i = 1; i < used.size(); i++) {
+            classNames[used.get(i)] = className(i - 1);
+        }
+
+        try (BufferedWriter writer = openWriter()) {
+            StringBuilder head = new StringBuilder("<style>\n");
+            for (int i = 1; i < used.size(); i++) {
+                head.append('.').append(classNames[used.get(i)]).append("{color:").append(hex(used.get(i)))
+                        .append("}\n");
+            }
+            head.append("</style>\n");
+            writer.write(HtmlPage.header(head.toString(), hex(used.get(0)), fontName, chars[0].length));
+
+            String openClass = null;
+            for (int y = 0; y < chars.length; y++) {
+                for (int x = 0; x < chars[y].length; x++) {
+                    String cellClass = classNames[palette[y][x]];
+                    if (cellClass != null ? !cellClass.equals(openClass) : openClass != null) {
+                        if (openClass != null) {
+                            writer.write("</span>");
+                        }
+                        if (cellClass != null) {
+                            writer.write("<span class=" + cellClass + ">");
+                        }
+                        openClass = cellClass;
+                    }
+                    HtmlPage.writeChar(writer, chars[y][x]);
+                }
+                writer.write('\n');
+            }
+            if (openClass != null) {
+                writer.write("</span>");
+            }
+            writer.write(HtmlPage.FOOTER);
+        } catch(IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Opens the file for writing in UTF-8, through a gzip stream if the output is compressed.
+     */
+    private BufferedWriter openWriter() throws IOException {
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE);
+        if (compressed) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private int quantize(Color color) {
+        int shift = BITS_PER_BYTE - bitsPerChannel;
+        return ((color.getRed() >> shift) << (2 * bitsPerChannel)) |
+                ((color.getGreen() >> shift) << bitsPerChannel) | (color.getBlue() >> shift);
+    }
+
+    /**
+     * Returns the CSS color of a palette entry, spreading each channel's levels over 0-255.
+     */
+    private String hex(int paletteIndex) {
+        int levels = (1 << bitsPerChannel) - 1;
+        int red = (paletteIndex >> (2 * bitsPerChannel)) & levels;
+        int green = (paletteIndex >> bitsPerChannel) & levels;
+        int blue = paletteIndex & levels;
+        return String.format("#%02x%02x%02x", red * MAX_RGB / levels, green * MAX_RGB / levels,
+                blue * MAX_RGB / levels);
+    }
+
+    /**
+     * Returns the class name of the i-th most common span color: a, b, ..., z, aa, ab, ...
+     */
+    private static String className(int index) {
+        StringBuilder name = new StringBuilder();
+        int i = index;
+        do {
+            name.insert(0, (char) ('a' + i % LETTERS));
+            i = i / LETTERS - 1;
+        } while (i >= 0);
+        return name.toString();
+    }
+}
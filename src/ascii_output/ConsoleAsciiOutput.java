@@ -3,14 +3,32 @@ package ascii_output;
 /**
  * Output a 2D array of chars to the console.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */public class ConsoleAsciiOutput implements StreamingAsciiOutput{
     @Override
     public void out(char[][] chars) {
         for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+            printRow(chars[y]);
+        }
+    }
+
+    @Override
+    public RowWriter begin(int numRows, int numCols) {
+        return new RowWriter() {
+            @Override
+            public void outRow(char[] row) {
+                printRow(row);
             }
-            System.out.println();
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static void printRow(char[] row) {
+        for (int x = 0; x < row.length; x++) {
+            System.out.print(row[x] + " ");
         }
+        System.out.println();
     }
 }
@@ -1,17 +1,18 @@
 package ascii_output;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
-    private static final double BASE_LINE_SPACING = 0.8;
-    private static final double BASE_FONT_SIZE = 150.0;
+public class HtmlAsciiOutput implements StreamingAsciiOutput {
+    private static final String TEXT_COLOR = "#000000";
 
     private final String fontName;
     private final String filename;
@@ -23,41 +24,104 @@ public class HtmlAsciiOutput implements AsciiOutput {
 
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
+        try(BufferedWriter writer = openWriter()) {
+            write(writer, chars);
+        } catch(IOException e) {
+            fail();
+        }
+    }
+
+    /**
+     * Writes the whole page to an open writer, which is left open.
+     */
+    void write(BufferedWriter writer, char[][] chars) throws IOException {
+        writeHeader(writer, chars[0].length);
+        for(int y = 0 ; y < chars.length ; y++) {
+            writeRow(writer, chars[y]);
+        }
+        writeFooter(writer);
+    }
+
+    @Override
+    public RowWriter begin(int numRows, int numCols) {
+        BufferedWriter opened = null;
+        try {
+            opened = openWriter();
+            writeHeader(opened, numCols);
+        } catch(IOException e) {
+            fail();
+            close(opened);
+            opened = null;
+        }
+        BufferedWriter writer = opened;
+        return new RowWriter() {
+            private boolean failed = writer == null;
+
+            @Override
+            public void outRow(char[] row) {
+                if (failed) {
+                    return;
+                }
+                try {
+                    writeRow(writer, row);
+                } catch(IOException e) {
+                    failed = true;
+                    fail();
+                }
+            }
+
+            @Override
+            public void close() {
+                if (writer == null) {
+                    return;
+                }
+                try {
+                    if (!failed) {
+                        writeFooter(writer);
                     }
-                    writer.write(htmlRep);
+                } catch(IOException e) {
+                    fail();
+                } finally {
+                    HtmlAsciiOutput.this.close(writer);
                 }
-                writer.newLine();
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
+        };
+    }
+
+    /**
+     * Opens the file for writing in UTF-8, the charset the page declares.
+     */
+    private BufferedWriter openWriter() throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8));
+    }
+
+    private void writeHeader(BufferedWriter writer, int numCols) throws IOException {
+        writer.write(HtmlPage.header("", TEXT_COLOR, fontName, numCols));
+    }
+
+    private static void writeRow(BufferedWriter writer, char[] row) throws IOException {
+        for (int x = 0; x < row.length ; x++) {
+            HtmlPage.writeChar(writer, row[x]);
+        }
+        writer.newLine();
+    }
+
+    private static void writeFooter(BufferedWriter writer) throws IOException {
+        writer.write(HtmlPage.FOOTER);
+    }
+
+    private void close(BufferedWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            fail();
         }
     }
+
+    private void fail() {
+        Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+    }
 }
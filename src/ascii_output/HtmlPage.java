@@ -0,0 +1,63 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The parts of the HTML page shared by the HTML outputs: the header that sizes the font to the number
+ * of columns, the escaping of chars, and the footer.
+ * @ Author: Hadas Elezra
+ */
+final class HtmlPage {
+    private static final double BASE_LINE_SPACING = 0.8;
+    private static final double BASE_FONT_SIZE = 150.0;
+
+    static final String FOOTER =
+        "</p>\n"+
+        "</body>\n"+
+        "</html>\n";
+
+    private HtmlPage() {
+    }
+
+    /**
+     * Returns the start of the page, up to and including the opening of the paragraph the art goes in.
+     * The page declares UTF-8, the encoding the outputs write it in, so glyphs outside ASCII survive.
+     * @param head      the content of the head element after the charset, or an empty string for none
+     * @param textColor the CSS color of the text
+     * @param fontName  the font of the page
+     * @param numCols   the number of chars in a row
+     */
+    static String header(String head, String textColor, String fontName, int numCols) {
+        return String.format(
+            "<!DOCTYPE html>\n"+
+            "<html>\n"+
+            "<head>\n"+
+            "<meta charset=\"UTF-8\">\n"+
+            "%s"+
+            "</head>\n"+
+            "<body style=\""+
+                "\tCOLOR:%s;"+
+                "\tTEXT-ALIGN:center;"+
+                "\tFONT-SIZE:1px;\">\n"+
+            "<p style=\""+
+                "\twhite-space:pre;"+
+                "\tFONT-FAMILY:%s;"+
+                "\tFONT-SIZE:%frem;"+
+                "\tLETTER-SPACING:0.15em;"+
+                "\tLINE-HEIGHT:%fem;\">\n",
+                head, textColor, fontName, BASE_FONT_SIZE/numCols, BASE_LINE_SPACING);
+    }
+
+    /**
+     * Writes a char, escaped if it is markup.
+     */
+    static void writeChar(Writer writer, char c) throws IOException {
+        switch(c) {
+            case '<': writer.write("&lt;");  break;
+            case '>': writer.write("&gt;");  break;
+            case '&': writer.write("&amp;"); break;
+            default:  writer.write(c);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package ascii_output;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars as a PNG or JPEG image.
+ * Each glyph is rendered with the font only once, into a glyph atlas of prerendered pixel rows.
+ * The art is then composed by copying those rows straight into the image's pixel buffer, so the
+ * cost per character is a few array copies rather than a text-drawing call.
+ * Atlases are shared by all outputs with the same font and cell size, and a cell is as wide as the
+ * widest glyph of the art, so wide glyphs are not clipped.
+ * @ Author: Hadas Elezra
+ */
+public class ImageAsciiOutput implements ColoredAsciiOutput {
+    private static final int DEFAULT_FONT_SIZE = 10;
+    private static final int WHITE = 0xFFFFFF;
+    private static final int MAX_RGB = 255;
+    /** The glyph atlases of every font and cell size in use, keyed by {@link #atlasKey}. */
+    private static final Map<String, GlyphAtlas> ATLASES = new ConcurrentHashMap<>();
+
+    private final String filename;
+    private final String format;
+    private final Font font;
+    private final FontMetrics metrics;
+    private final int cellHeight;
+
+    /**
+     * Constructs an output with the default font size.
+     * @param filename the image file; a .jpg or .jpeg extension selects JPEG, anything else PNG
+     * @param fontName the font the glyphs are drawn with
+     */
+    public ImageAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, DEFAULT_FONT_SIZE);
+    }
+
+    /**
+     * @param filename the image file; a .jpg or .jpeg extension selects JPEG, anything else PNG
+     * @param fontName the font the glyphs are drawn with
+     * @param fontSize the font size, which determines the height of a character cell in pixels
+     */
+    public ImageAsciiOutput(String filename, String fontName, int fontSize) {
+        this.filename = filename;
+        String lower = filename.toLowerCase();
+        this.format = lower.endsWith(".jpg") || lower.endsWith(".jpeg") ? "jpeg" : "png";
+        this.font = new Font(fontName, Font.PLAIN, fontSize);
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        this.metrics = g.getFontMetrics(font);
+        g.dispose();
+        this.cellHeight = Math.max(1, metrics.getAscent() + metrics.getDescent());
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        GlyphAtlas atlas = atlasFor(chars, true);
+        int cellWidth = atlas.cellWidth;
+        BufferedImage image = createImage(chars, cellWidth);
+        int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int imageWidth = image.getWidth();
+        for (int y = 0; y < chars.length; y++) {
+            for (int x = 0; x < chars[y].length; x++) {
+                int[] glyph = atlas.pixels[chars[y][x]];
+                int offset = y * cellHeight * imageWidth + x * cellWidth;
+                for (int gy = 0; gy < cellHeight; gy++) {
+                    System.arraycopy(glyph, gy * cellWidth, raster, offset + gy * imageWidth, cellWidth);
+                }
+            }
+        }
+        write(image);
+    }
+
+    @Override
+    public void out(char[][] chars, Color[][] tileColors) {
+        GlyphAtlas atlas = atlasFor(chars, false);
+        int cellWidth = atlas.cellWidth;
+        BufferedImage image = createImage(chars, cellWidth);
+        int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int imageWidth = image.getWidth();
+        for (int y = 0; y < chars.length; y++) {
+            for (int x = 0; x < chars[y].length; x++) {
+                byte[] coverage = atlas.coverage[chars[y][x]];
+                int rgb = tileColors[y][x].getRGB();
+                int red = (rgb >> 16) & MAX_RGB;
+                int green = (rgb >> 8) & MAX_RGB;
+                int blue = rgb & MAX_RGB;
+                int offset = y * cellHeight * imageWidth + x * cellWidth;
+                for (int gy = 0; gy < cellHeight; gy++) {
+                    int rowStart = offset + gy * imageWidth;
+                    for (int gx = 0; gx < cellWidth; gx++) {
+                        int alpha = coverage[gy * cellWidth + gx] & MAX_RGB;
+                        if (alpha != 0) {
+                            // Blend the tile color over the white background by the glyph's coverage.
+                            raster[rowStart + gx] =
+                                    (blend(red, alpha) << 16) | (blend(green, alpha) << 8) | blend(blue, alpha);
+                        }
+                    }
+                }
+            }
+        }
+        write(image);
+    }
+
+    /**
+     * Returns the atlas for the art, sized to its widest glyph, with every glyph of the art rendered.
+     * @param chars      the art
+     * @param monochrome whether the black-on-white pixels are needed, not only the coverage
+     */
+    private GlyphAtlas atlasFor(char[][] chars, boolean monochrome) {
+        BitSet used = new BitSet();
+        for (char[] row : chars) {
+            for (char c : row) {
+                used.set(c);
+            }
+        }
+        int cellWidth = cellWidth(used);
+        GlyphAtlas atlas = ATLASES.computeIfAbsent(atlasKey(cellWidth),
+                key -> new GlyphAtlas(font, cellWidth, cellHeight, metrics.getAscent()));
+        atlas.prepare(used, monochrome);
+        return atlas;
+    }
+
+    /**
+     * Returns the advance of the widest of a set of glyphs, so that none of them is clipped.
+     * @param chars the chars of the glyphs
+     */
+    private int cellWidth(BitSet chars) {
+        int width = 1;
+        for (int c = chars.nextSetBit(0); c >= 0; c = chars.nextSetBit(c + 1)) {
+            width = Math.max(width, metrics.charWidth((char) c));
+        }
+        return width;
+    }
+
+    /**
+     * Returns the key of the atlas of this output's font at the given cell width.
+     * @param cellWidth the width of a character cell in pixels
+     */
+    private String atlasKey(int cellWidth) {
+        return font.getName() + '/' + font.getSize() + '/' + cellWidth;
+    }
+
+    /**
+     * Returns a white image with a cell for every char of the art.
+     * @param chars     the art
+     * @param cellWidth the width of a character cell in pixels
+     */
+    private BufferedImage createImage(char[][] chars, int cellWidth) {
+        BufferedImage image = new BufferedImage(chars[0].length * cellWidth, chars.length * cellHeight,
+                BufferedImage.TYPE_INT_RGB);
+        Arrays.fill(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), WHITE);
+        return image;
+    }
+
+    /**
+     * Writes the image to the file, logging a failure.
+     */
+    private void write(BufferedImage image) {
+        try {
+            ImageIO.write(image, format, new File(filename));
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Blends a color channel over white by a coverage.
+     * @param channel the channel of the tile color, 0-255
+     * @param alpha   the coverage of the pixel, 0-255
+     */
+    private static int blend(int channel, int alpha) {
+        return MAX_RGB + (channel - MAX_RGB) * alpha / MAX_RGB;
+    }
+
+    /**
+     * The prerendered glyphs of one font at one cell size. Glyphs are rendered on first use, under
+     * the atlas's lock; outputs read them without it once {@link #prepare} has returned.
+     */
+    private static class GlyphAtlas {
+        private final Font font;
+        private final int cellWidth;
+        private final int cellHeight;
+        private final int baseline;
+        /** Prerendered black-on-white pixels of each glyph, indexed by char; null until first used. */
+        private final int[][] pixels;
+        /** Coverage (0-255) of each glyph pixel, indexed by char; null until first used. */
+        private final byte[][] coverage;
+
+        /**
+         * @param font       the font the glyphs are drawn with
+         * @param cellWidth  the width of a character cell in pixels
+         * @param cellHeight the height of a character cell in pixels
+         * @param baseline   the distance from the top of a cell to the baseline
+         */
+        private GlyphAtlas(Font font, int cellWidth, int cellHeight, int baseline) {
+            this.font = font;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+            this.baseline = baseline;
+            this.pixels = new int[Character.MAX_VALUE + 1][];
+            this.coverage = new byte[Character.MAX_VALUE + 1][];
+        }
+
+        /**
+         * Renders every glyph of a set that is not rendered yet.
+         * @param chars      the chars whose glyphs are needed
+         * @param monochrome whether the black-on-white pixels are needed, not only the coverage
+         */
+        private synchronized void prepare(BitSet chars, boolean monochrome) {
+            for (int c = chars.nextSetBit(0); c >= 0; c = chars.nextSetBit(c + 1)) {
+                if (coverage[c] == null) {
+                    coverage[c] = render((char) c);
+                }
+                if (monochrome && pixels[c] == null) {
+                    pixels[c] = toPixels(coverage[c]);
+                }
+            }
+        }
+
+        /**
+         * Draws a glyph and returns its coverage.
+         * @param c the char
+         */
+        private byte[] render(char c) {
+            BufferedImage cell = new BufferedImage(cellWidth, cellHeight, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = cell.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(font);
+            g.setColor(Color.WHITE);
+            g.drawString(String.valueOf(c), 0, baseline);
+            g.dispose();
+            byte[] glyph = new byte[cellWidth * cellHeight];
+            cell.getRaster().getDataElements(0, 0, cellWidth, cellHeight, glyph);
+            return glyph;
+        }
+
+        /**
+         * Turns a glyph's coverage into black-on-white pixels.
+         * @param glyph the coverage of the glyph
+         */
+        private static int[] toPixels(byte[] glyph) {
+            int[] result = new int[glyph.length];
+            for (int i = 0; i < glyph.length; i++) {
+                int grey = MAX_RGB - (glyph[i] & MAX_RGB);
+                result[i] = (grey << 16) | (grey << 8) | grey;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ascii_output;
+
+/**
+ * An output that can receive a 2D array of chars one row at a time, so that each row is written as
+ * soon as it is ready instead of after the whole array. Writing every row to the RowWriter that begin
+ * returns, then closing it, produces the same result as a single call to out. The state of one array
+ * lives in its RowWriter, so the output itself can be shared and reused.
+ * @ Author: Hadas Elezra
+ */
+public interface StreamingAsciiOutput extends AsciiOutput {
+    /**
+     * Receives the rows of one 2D array of chars.
+     */
+    interface RowWriter extends AutoCloseable {
+        /**
+         * Output the next row of the array
+         */
+        void outRow(char[] row);
+
+        /**
+         * Finish the array and release what was opened for it
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Start a new 2D array of chars of the specified dimensions
+     */
+    RowWriter begin(int numRows, int numCols);
+}
@@ -0,0 +1,162 @@
+package benchmark;
+
+import ascii_art.AsciiArtAlgorithm;
+import ascii_output.AsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import image.ImagePaddingManager;
+import image.SubImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The AllocationBudgetCheck class guards the hot paths of the pipeline against allocation
+ * regressions. Each stage runs over fixed synthetic inputs, the bytes it allocates on all threads are
+ * measured, so that the work of parallel streams and thread pools counts too, and the check fails
+ * (exit status 1) when a stage exceeds its budget.
+ * <p>
+ * Budgets are per source pixel, per padded pixel or per tile, so they hold for any input size.
+ * When an optimization lands, lower the stage's budget to just above the new measurement so that
+ * the gain cannot silently be lost again.
+ * <p>
+ * Usage: {@code java benchmark.AllocationBudgetCheck}
+ *
+ * @ Author: Hadas Elezra
+ */
+public class AllocationBudgetCheck {
+
+    // Budgets
+    private static final double IMAGE_LOAD_BYTES_PER_PIXEL = 72; // new Image(file), per source pixel
+    private static final double PADDING_BYTES_PER_PIXEL = 56; // padImageToPowerOfTwo, per padded pixel
+    private static final double SUB_IMAGES_BYTES_PER_PIXEL = 8; // getSubImages, per padded pixel
+    private static final double ALGORITHM_BYTES_PER_TILE = 4; // AsciiArtAlgorithm.run, per tile
+    private static final double BRIGHTNESS_GRID_BYTES_PER_TILE = 16; // getBrightnessGrid, per tile
+    private static final double OUTPUT_BYTES_PER_TILE = 4; // HtmlAsciiOutput.out, per tile
+
+    // Constants
+    private static final int WIDTH = 600; // Width of the synthetic input
+    private static final int HEIGHT = 400; // Height of the synthetic input
+    private static final int RESOLUTION = 128; // Resolution the tile stages run at
+    private static final long SEED = 31; // Seed of the synthetic input
+    private static final int WARMUP_RUNS = 5; // Runs before measuring, so the JIT has settled
+    private static final int MEASURED_RUNS = 5; // Measured runs; the smallest one counts
+    private static final char[] CHARSET = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Fields
+    private static boolean failed = false; // Whether any stage exceeded its budget
+
+    /**
+     * A pipeline stage whose allocations are measured.
+     */
+    private interface Stage {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args Unused.
+     * @throws IOException If the synthetic input cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        File directory = Files.createTempDirectory("ascii-alloc").toFile();
+        File input = SyntheticImageGenerator.write(SyntheticImageGenerator.Kind.SPECTRUM, WIDTH, HEIGHT, SEED,
+                directory);
+        File html = new File(directory, "out.html");
+
+        Image image = new Image(input.getPath());
+        Image paddedImage = ImagePaddingManager.padImageToPowerOfTwo(image);
+        SubImageManager subImageManager = SubImageManager.newInstance(paddedImage);
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET);
+        long sourcePixels = (long) WIDTH * HEIGHT;
+        long paddedPixels = (long) paddedImage.getWidth() * paddedImage.getHeight();
+        char[][] art = new AsciiArtAlgorithm(paddedImage, RESOLUTION, matcher.getCharSet(), matcher,
+                subImageManager).run();
+        long tiles = (long) art.length * art[0].length;
+        AsciiOutput output = new HtmlAsciiOutput(html.getPath(), "Courier New");
+
+        check("Image(String)", "source pixel", sourcePixels, IMAGE_LOAD_BYTES_PER_PIXEL,
+                () -> new Image(input.getPath()));
+        check("ImagePaddingManager.padImageToPowerOfTwo", "padded pixel", paddedPixels,
+                PADDING_BYTES_PER_PIXEL, () -> ImagePaddingManager.padImageToPowerOfTwo(image));
+        check("SubImageManager.getSubImages", "padded pixel", paddedPixels, SUB_IMAGES_BYTES_PER_PIXEL,
+                () -> SubImageManager.newInstance(paddedImage).getSubImages(RESOLUTION));
+        // The sub-images are cached by now, so this measures brightness and matching only.
+        check("AsciiArtAlgorithm.run", "tile", tiles, ALGORITHM_BYTES_PER_TILE,
+                () -> new AsciiArtAlgorithm(paddedImage, RESOLUTION, matcher.getCharSet(), matcher,
+                        subImageManager).run());
+        check("SubImageManager.getBrightnessGrid", "tile", tiles, BRIGHTNESS_GRID_BYTES_PER_TILE,
+                () -> subImageManager.getBrightnessGrid(RESOLUTION));
+        check("HtmlAsciiOutput.out", "tile", tiles, OUTPUT_BYTES_PER_TILE, () -> output.out(art));
+
+        html.delete();
+        input.delete();
+        directory.delete();
+        if (failed) {
+            System.out.println("FAILED: allocation budget exceeded");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Measures a stage and compares it to its budget.
+     *
+     * @param name        The name of the stage.
+     * @param unit        The unit the budget is expressed per.
+     * @param units       The number of units the stage processes.
+     * @param budgetBytes The budget in bytes per unit.
+     * @param stage       The stage.
+     * @throws IOException If the stage fails.
+     */
+    private static void check(String name, String unit, long units, double budgetBytes, Stage stage)
+            throws IOException {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            stage.run();
+        }
+        long smallest = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            Map<Long, Long> before = allocatedBytesByThread();
+            stage.run();
+            long allocated = 0;
+            for (Map.Entry<Long, Long> entry : allocatedBytesByThread().entrySet()) {
+                allocated += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+            }
+            smallest = Math.min(smallest, allocated);
+        }
+        double perUnit = (double) smallest / units;
+        boolean withinBudget = perUnit <= budgetBytes;
+        failed |= !withinBudget;
+        System.out.printf("%-4s %-42s %10.2f bytes/%s (budget %.2f)%n", withinBudget ? "ok" : "FAIL", name,
+                perUnit, unit, budgetBytes);
+    }
+
+    /**
+     * Returns the bytes allocated so far by every live thread. A thread that ends during a stage drops
+     * out of the next snapshot, so pool threads, which outlive a stage, are counted but short-lived
+     * threads a stage starts and joins are not.
+     *
+     * @return The allocated bytes by thread id.
+     */
+    private static Map<Long, Long> allocatedBytesByThread() {
+        long[] ids = THREADS.getAllThreadIds();
+        long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,119 @@
+package benchmark;
+
+import ascii_art.AsciiArtAlgorithm;
+import ascii_art.FusedAsciiArtEngine;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import image.ImagePaddingManager;
+import image.SubImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * The FusedPipelineBenchmark class compares the staged pipeline (Image, ImagePaddingManager,
+ * SubImageManager, AsciiArtAlgorithm, HtmlAsciiOutput) with the FusedAsciiArtEngine, end to end from
+ * the image file to the HTML file. For each resolution it reports the fastest run and the bytes
+ * allocated by each, and checks that both produce the same ASCII art.
+ * <p>
+ * Usage: {@code java benchmark.FusedPipelineBenchmark [image] [runs]}; without an image, a synthetic
+ * one is generated.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class FusedPipelineBenchmark {
+
+    // Constants
+    private static final int SYNTHETIC_WIDTH = 1500; // Width of the synthetic image
+    private static final int SYNTHETIC_HEIGHT = 1000; // Height of the synthetic image
+    private static final long SEED = 11; // Seed of the synthetic image
+    private static final int DEFAULT_RUNS = 5; // Measured runs per resolution; the fastest one counts
+    private static final int[] RESOLUTIONS = {32, 128, 512}; // Resolutions measured, where legal
+    private static final char[] CHARSET = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * A pipeline run.
+     */
+    private interface Pipeline {
+        char[][] run(int resolution) throws IOException;
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The image file and the number of runs.
+     * @throws IOException If the image cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        File directory = Files.createTempDirectory("ascii-fused").toFile();
+        String imageName = args.length > 0 ? args[0] : SyntheticImageGenerator.write(
+                SyntheticImageGenerator.Kind.SPECTRUM, SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, SEED, directory).getPath();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+        String html = new File(directory, "out.html").getPath();
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET);
+        matcher.getCharByImageBrightness(0);
+
+        Pipeline staged = resolution -> {
+            Image image = new Image(imageName);
+            Image paddedImage = ImagePaddingManager.padImageToPowerOfTwo(image);
+            SubImageManager subImageManager = SubImageManager.newInstance(paddedImage);
+            char[][] chars = new AsciiArtAlgorithm(paddedImage, resolution, matcher.getCharSet(), matcher,
+                    subImageManager).run();
+            new HtmlAsciiOutput(html, "Courier New").out(chars);
+            return chars;
+        };
+        FusedAsciiArtEngine engine = new FusedAsciiArtEngine(matcher);
+        Pipeline fused = resolution -> engine.run(imageName, resolution, new HtmlAsciiOutput(html, "Courier New"));
+
+        int paddedWidth = ImagePaddingManager.nextPowerOfTwo(Image.readDimensions(imageName).width);
+        System.out.printf("%10s %12s %12s %12s %12s %8s %10s%n", "resolution", "staged ms", "staged MB",
+                "fused ms", "fused MB", "speedup", "identical");
+        for (int resolution : RESOLUTIONS) {
+            if (resolution > paddedWidth) {
+                continue;
+            }
+            boolean identical = Arrays.deepEquals(staged.run(resolution), fused.run(resolution));
+            long[] stagedCost = measure(staged, resolution, runs);
+            long[] fusedCost = measure(fused, resolution, runs);
+            System.out.printf("%10d %12.1f %12.1f %12.1f %12.1f %7.1fx %10s%n", resolution, stagedCost[0] / 1e6,
+                    stagedCost[1] / 1e6, fusedCost[0] / 1e6, fusedCost[1] / 1e6,
+                    (double) stagedCost[0] / fusedCost[0], identical);
+        }
+        new File(html).delete();
+        if (args.length == 0) {
+            new File(imageName).delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Measures a pipeline after one warm-up run.
+     *
+     * @param pipeline   The pipeline.
+     * @param resolution The resolution to run it at.
+     * @param runs       The number of measured runs.
+     * @return The fastest run in nanoseconds, and the fewest bytes allocated by a run.
+     * @throws IOException If the pipeline fails.
+     */
+    private static long[] measure(Pipeline pipeline, int resolution, int runs) throws IOException {
+        pipeline.run(resolution);
+        long bestNanos = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            pipeline.run(resolution);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            bestBytes = Math.min(bestBytes, THREADS.getCurrentThreadAllocatedBytes() - bytesBefore);
+        }
+        return new long[]{bestNanos, bestBytes};
+    }
+}
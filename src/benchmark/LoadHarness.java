@@ -0,0 +1,384 @@
+package benchmark;
+
+import ascii_art.AdmissionException;
+import ascii_art.AsciiArtAlgorithm;
+import ascii_art.RenderAdmissionController;
+import ascii_output.AsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import image.ImagePaddingManager;
+import image.SubImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The LoadHarness class drives the whole conversion pipeline (load, pad, divide, match, output)
+ * with a mix of synthetic images, resolutions, charsets and output types, for minutes or hours.
+ * It runs either at a target rate, measuring latency from each render's scheduled start so that
+ * queueing is not hidden, or at saturation with a fixed number of threads. Every interval it
+ * reports throughput, latency percentiles, GC pause time and the heap high-water mark.
+ * <p>
+ * Usage: {@code java benchmark.LoadHarness [--option=value ...]}, with options
+ * duration (seconds), rate (renders per second, 0 for saturation), threads, interval (seconds),
+ * sizes, resolutions, charsets (digits, ascii, blocks), outputs (discard, html) and budget (bytes
+ * for the admission controller). List options are comma separated.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class LoadHarness {
+
+    // Constants
+    private static final double[] ASPECT_RATIOS = {1.0, 0.75, 0.5625, 1.7778}; // Height over width
+    private static final String[] ROUNDINGS = {"abs", "up", "down"}; // Rounding methods in the mix
+    private static final long NANOS_IN_SECOND = 1_000_000_000L; // Nanoseconds in a second
+    private static final double NANOS_IN_MILLI = 1_000_000.0; // Nanoseconds in a millisecond
+    private static final int BYTES_IN_MEGABYTE = 1 << 20; // Bytes in a megabyte
+    private static final String DEFAULT_FONT = "Courier New"; // Font for HTML output
+
+    // Fields
+    private final Map<String, String> options; // The command line options
+    private final List<File> corpus; // The generated images
+    private final int[] resolutions; // The resolutions in the mix
+    private final String[] outputs; // The output types in the mix
+    private final List<SubImgCharMatcher> matchers; // One warmed-up matcher per charset and rounding
+    private final RenderAdmissionController admission; // Guards the heap like a real service would
+    private final File workDirectory; // Holds the corpus and the HTML outputs
+    private final Object statsLock; // Guards the interval statistics
+    private List<Long> intervalLatencies; // Latencies, in nanoseconds, of the current interval
+    private final AtomicLong completed; // Renders completed since the start
+    private final AtomicLong failed; // Renders that failed since the start
+    private final AtomicLong rejected; // Renders rejected by the admission controller
+
+    /**
+     * Runs the load harness.
+     *
+     * @param args The options, each of the form --name=value.
+     * @throws Exception If the corpus cannot be generated or the run is interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("duration", "60");
+        options.put("rate", "0");
+        options.put("threads", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        options.put("interval", "10");
+        options.put("sizes", "256,1024,2048");
+        options.put("resolutions", "16,64,256");
+        options.put("charsets", "digits,ascii");
+        options.put("outputs", "discard,html");
+        options.put("budget", String.valueOf(Runtime.getRuntime().maxMemory() / 2));
+        for (String arg : args) {
+            String[] parts = arg.replaceFirst("^--", "").split("=", 2);
+            if (parts.length != 2 || !options.containsKey(parts[0])) {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+            options.put(parts[0], parts[1]);
+        }
+        System.setProperty("java.awt.headless", "true");
+        new LoadHarness(options).run();
+    }
+
+    /**
+     * Constructs a LoadHarness and generates its image corpus.
+     *
+     * @param options The options.
+     * @throws IOException If the corpus cannot be written.
+     */
+    private LoadHarness(Map<String, String> options) throws IOException {
+        this.options = options;
+        this.workDirectory = Files.createTempDirectory("ascii-load").toFile();
+        this.workDirectory.deleteOnExit();
+        this.corpus = new ArrayList<>();
+        long seed = 0;
+        for (int size : parseInts(options.get("sizes"))) {
+            for (double aspect : ASPECT_RATIOS) {
+                for (SyntheticImageGenerator.Kind kind : SyntheticImageGenerator.Kind.values()) {
+                    File file = SyntheticImageGenerator.write(kind, size, (int) (size * aspect), seed++,
+                            workDirectory);
+                    file.deleteOnExit();
+                    corpus.add(file);
+                }
+            }
+        }
+        this.resolutions = parseInts(options.get("resolutions"));
+        this.outputs = options.get("outputs").split(",");
+        this.matchers = new ArrayList<>();
+        for (String charset : options.get("charsets").split(",")) {
+            for (String rounding : ROUNDINGS) {
+                SubImgCharMatcher matcher = new SubImgCharMatcher(charsetChars(charset));
+                matcher.setRoundingMethod(rounding);
+                matcher.getCharByImageBrightness(0); // Rasterize now, lookups are then read-only
+                matchers.add(matcher);
+            }
+        }
+        this.admission = new RenderAdmissionController(Long.parseLong(options.get("budget")), 0);
+        this.statsLock = new Object();
+        this.intervalLatencies = new ArrayList<>();
+        this.completed = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.rejected = new AtomicLong();
+    }
+
+    /**
+     * Runs the load for the configured duration, reporting every interval.
+     *
+     * @throws InterruptedException If interrupted while waiting for the run to end.
+     */
+    private void run() throws InterruptedException {
+        long durationNanos = Long.parseLong(options.get("duration")) * NANOS_IN_SECOND;
+        double rate = Double.parseDouble(options.get("rate"));
+        int threads = Integer.parseInt(options.get("threads"));
+        long intervalSeconds = Long.parseLong(options.get("interval"));
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+
+        System.out.printf("corpus: %d images, %s, %d threads%n", corpus.size(),
+                rate > 0 ? "target " + rate + " renders/s" : "saturation", threads);
+        System.out.println("elapsed_s  renders/s     p50_ms     p90_ms     p99_ms     max_ms  " +
+                "gc_ms  gc_count  heap_peak_mb  queue  reserved_mb");
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        long[] gcBaseline = gcTotals();
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            private long[] lastGc = gcBaseline;
+
+            @Override
+            public void run() {
+                long[] gc = gcTotals();
+                report((System.nanoTime() - start) / NANOS_IN_SECOND, intervalSeconds, gc[0] - lastGc[0],
+                        gc[1] - lastGc[1]);
+                lastGc = gc;
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        if (rate > 0) {
+            long periodNanos = (long) (NANOS_IN_SECOND / rate);
+            for (long scheduled = start; scheduled < deadline; scheduled += periodNanos) {
+                long intended = scheduled;
+                long sleep = intended - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+                workers.execute(() -> renderOnce(intended));
+            }
+        } else {
+            for (int t = 0; t < threads; t++) {
+                workers.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        renderOnce(System.nanoTime());
+                    }
+                });
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        scheduler.shutdownNow();
+
+        double seconds = (double) (System.nanoTime() - start) / NANOS_IN_SECOND;
+        long[] gc = gcTotals();
+        System.out.printf("total: %d renders in %.1f s (%.2f renders/s), %d failed, %d rejected, " +
+                        "gc %d ms in %d collections%n", completed.get(), seconds, completed.get() / seconds,
+                failed.get(), rejected.get(), gc[0] - gcBaseline[0], gc[1] - gcBaseline[1]);
+    }
+
+    /**
+     * Renders one randomly chosen image with randomly chosen settings through the full pipeline.
+     *
+     * @param intendedStart The time the render was scheduled to start, used for its latency.
+     */
+    private void renderOnce(long intendedStart) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        File file = corpus.get(random.nextInt(corpus.size()));
+        int requested = resolutions[random.nextInt(resolutions.length)];
+        SubImgCharMatcher matcher = matchers.get(random.nextInt(matchers.size()));
+        String outputType = outputs[random.nextInt(outputs.length)];
+        try {
+            RenderAdmissionController.Reservation reservation = admission.admit(file.getPath(), requested, 0);
+            try {
+                renderAdmitted(file, requested, matcher, outputType);
+            } finally {
+                reservation.close();
+            }
+            completed.incrementAndGet();
+            long latency = System.nanoTime() - intendedStart;
+            synchronized (statsLock) {
+                intervalLatencies.add(latency);
+            }
+        } catch (AdmissionException e) {
+            rejected.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Renders an image through the full pipeline, once its memory is reserved.
+     *
+     * @param file       The image file.
+     * @param requested  The requested resolution, clamped to the legal ones of the image.
+     * @param matcher    The matcher for matching brightness to characters.
+     * @param outputType The output type.
+     * @throws IOException If the image cannot be read.
+     */
+    private void renderAdmitted(File file, int requested, SubImgCharMatcher matcher, String outputType)
+            throws IOException {
+        Image image = new Image(file.getPath());
+        Image paddedImage = ImagePaddingManager.padImageToPowerOfTwo(image);
+        SubImageManager subImageManager = SubImageManager.newInstance(paddedImage);
+        int minResolution = Math.max(1, paddedImage.getWidth() / paddedImage.getHeight());
+        int resolution = Math.max(minResolution, Math.min(requested, paddedImage.getWidth()));
+        char[][] chars = new AsciiArtAlgorithm(paddedImage, resolution, matcher.getCharSet(), matcher,
+                subImageManager).run();
+        createOutput(outputType).out(chars);
+    }
+
+    /**
+     * Prints one report line and starts a new interval.
+     *
+     * @param elapsedSeconds  The seconds since the run started.
+     * @param intervalSeconds The length of the interval, in seconds.
+     * @param gcMillis        The GC pause time of the interval, in milliseconds.
+     * @param gcCount         The number of collections of the interval.
+     */
+    private void report(long elapsedSeconds, long intervalSeconds, long gcMillis, long gcCount) {
+        List<Long> latencies;
+        synchronized (statsLock) {
+            latencies = intervalLatencies;
+            intervalLatencies = new ArrayList<>();
+        }
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%9d %10.2f %10.1f %10.1f %10.1f %10.1f %6d %9d %13d %6d %12d%n",
+                elapsedSeconds, (double) sorted.length / intervalSeconds,
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                percentile(sorted, 1.0), gcMillis, gcCount, heapHighWaterAndReset() / BYTES_IN_MEGABYTE,
+                admission.getQueueDepth(), admission.getReservedBytes() / BYTES_IN_MEGABYTE);
+    }
+
+    /**
+     * Creates the output of one render: an HTML file per thread, or an output that discards the art.
+     *
+     * @param outputType The output type: "html", or anything else, such as "discard", for none.
+     * @return The output.
+     */
+    private AsciiOutput createOutput(String outputType) {
+        if (outputType.equals("html")) {
+            File file = new File(workDirectory, Thread.currentThread().getName() + ".html");
+            file.deleteOnExit();
+            return new HtmlAsciiOutput(file.getPath(), DEFAULT_FONT);
+        }
+        return new DiscardAsciiOutput();
+    }
+
+    /**
+     * Discards the art, so that the render alone is measured.
+     */
+    private static class DiscardAsciiOutput implements AsciiOutput {
+        @Override
+        public void out(char[][] chars) {
+            // Intentionally empty
+        }
+    }
+
+    /**
+     * Returns a percentile of the latencies, by the nearest-rank method.
+     *
+     * @param sorted   The latencies in nanoseconds, sorted.
+     * @param fraction The percentile, between 0 and 1.
+     * @return The percentile in milliseconds, or 0 if there are no latencies.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / NANOS_IN_MILLI;
+    }
+
+    /**
+     * Returns the GC totals of all collectors since the JVM started.
+     *
+     * @return The total collection time in milliseconds, and the total number of collections.
+     */
+    private static long[] gcTotals() {
+        long time = 0;
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return new long[]{time, count};
+    }
+
+    /**
+     * Returns the heap high-water mark since the last call, and resets it for the next interval.
+     *
+     * @return The sum of the peak usage of the heap pools, in bytes.
+     */
+    private static long heapHighWaterAndReset() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+                pool.resetPeakUsage();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Parses a comma-separated list of integers.
+     *
+     * @param list The list, e.g. "64,128".
+     * @return The integers.
+     */
+    private static int[] parseInts(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    /**
+     * Returns the chars of a named charset.
+     *
+     * @param name The charset: "digits", "ascii" or "blocks".
+     * @return The chars.
+     * @throws IllegalArgumentException If the charset is unknown.
+     */
+    private static char[] charsetChars(String name) {
+        StringBuilder chars = new StringBuilder();
+        switch (name) {
+            case "digits":
+                chars.append("0123456789");
+                break;
+            case "ascii":
+                for (char c = 32; c < 127; c++) {
+                    chars.append(c);
+                }
+                break;
+            case "blocks":
+                chars.append(" \u2591\u2592\u2593\u2588");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown charset: " + name);
+        }
+        return chars.toString().toCharArray();
+    }
+}
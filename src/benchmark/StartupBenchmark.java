@@ -0,0 +1,142 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The StartupBenchmark class measures the wall-clock startup cost of the Shell as a user sees it.
+ * Each iteration launches a fresh JVM running {@code ascii_art.Shell}, and reports the time until the
+ * first prompt is printed and the time until the first {@code asciiArt} render has been written.
+ * Passing an AppCDS archive (see {@code scripts/appcds.sh}) compares a cold start against a start
+ * from the class-data-sharing archive.
+ * <p>
+ * Usage: {@code java benchmark.StartupBenchmark <image> [iterations] [archive.jsa]}
+ *
+ * @ Author: Hadas Elezra
+ */
+public class StartupBenchmark {
+
+    // Constants
+    private static final String SHELL_CLASS = "ascii_art.Shell"; // The entry point under test
+    private static final String PROMPT = ">>> "; // The prompt printed by the Shell
+    private static final int DEFAULT_ITERATIONS = 5; // Default number of JVM launches
+    private static final double NANOS_IN_MILLI = 1_000_000.0; // Nanoseconds in a millisecond
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The image path, optionally followed by the iteration count and an archive path.
+     * @throws IOException          If a child JVM cannot be launched.
+     * @throws InterruptedException If interrupted while waiting for a child JVM.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: StartupBenchmark <image> [iterations] [archive.jsa]");
+            return;
+        }
+        String imageName = args[0];
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        String archive = args.length > 2 ? args[2] : null;
+
+        double[] promptTimes = new double[iterations];
+        double[] renderTimes = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            double[] times = launchOnce(imageName, archive);
+            promptTimes[i] = times[0];
+            renderTimes[i] = times[1];
+        }
+        System.out.printf("archive: %s%n", archive == null ? "none" : archive);
+        System.out.printf("time to first prompt: median %.1f ms, min %.1f ms%n",
+                median(promptTimes), min(promptTimes));
+        System.out.printf("time to first render: median %.1f ms, min %.1f ms%n",
+                median(renderTimes), min(renderTimes));
+    }
+
+    /**
+     * Launches one Shell JVM, renders once and exits.
+     *
+     * @param imageName The image passed to the Shell.
+     * @param archive   The AppCDS archive to start from, or null for a default start.
+     * @return The time to first prompt and the time to first render, in milliseconds.
+     * @throws IOException          If the child JVM cannot be launched.
+     * @throws InterruptedException If interrupted while waiting for the child JVM.
+     */
+    private static double[] launchOnce(String imageName, String archive)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SHELL_CLASS);
+        command.add(imageName);
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        InputStream stdout = process.getInputStream();
+        OutputStream stdin = process.getOutputStream();
+
+        waitForPrompt(stdout);
+        long promptTime = System.nanoTime();
+        stdin.write("asciiArt\n".getBytes(StandardCharsets.US_ASCII));
+        stdin.flush();
+        waitForPrompt(stdout);
+        long renderTime = System.nanoTime();
+        stdin.write("exit\n".getBytes(StandardCharsets.US_ASCII));
+        stdin.flush();
+        process.waitFor();
+
+        return new double[]{(promptTime - start) / NANOS_IN_MILLI, (renderTime - start) / NANOS_IN_MILLI};
+    }
+
+    /**
+     * Consumes the child's output until the next prompt.
+     *
+     * @param stdout The child's standard output.
+     * @throws IOException If the child exits before printing a prompt.
+     */
+    private static void waitForPrompt(InputStream stdout) throws IOException {
+        int matched = 0;
+        while (matched < PROMPT.length()) {
+            int b = stdout.read();
+            if (b < 0) {
+                throw new IOException("Shell exited before printing a prompt.");
+            }
+            if (b == PROMPT.charAt(matched)) {
+                matched++;
+            } else {
+                matched = b == PROMPT.charAt(0) ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the median of the measurements; of an even number, the upper of the middle two.
+     *
+     * @param values The measurements, which are not reordered.
+     * @return The median.
+     */
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Returns the smallest measurement, the one least disturbed by the rest of the machine.
+     *
+     * @param values The measurements.
+     * @return The smallest one, or 0 if there are none.
+     */
+    private static double min(double[] values) {
+        return Arrays.stream(values).min().orElse(0);
+    }
+}
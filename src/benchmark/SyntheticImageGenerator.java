@@ -0,0 +1,161 @@
+package benchmark;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The SyntheticImageGenerator class produces deterministic test images for benchmarks and load
+ * tests, so that runs can be compared without shipping a corpus of real photos.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class SyntheticImageGenerator {
+
+    /**
+     * The kinds of images that can be generated.
+     */
+    public enum Kind {
+        /** A smooth diagonal gradient: large uniform regions, few distinct characters. */
+        GRADIENT,
+        /** Uniform random noise: every tile is different, worst case for any caching. */
+        NOISE,
+        /** Lines of text on a white page: sharp edges and a mostly white background. */
+        TEXT,
+        /** Fractal noise with a 1/f spectrum, statistically close to natural photos. */
+        SPECTRUM
+    }
+
+    // Constants
+    private static final int SPECTRUM_OCTAVES = 6; // Octaves summed for the 1/f noise
+    private static final int SPECTRUM_BASE_CELLS = 4; // Lattice cells across the coarsest octave
+    private static final int TEXT_LINES = 24; // Lines of text per image height
+    private static final String TEXT_SAMPLE = "The quick brown fox jumps over the lazy dog 0123456789 ";
+    private static final int MAX_RGB = 255; // Maximum value for RGB
+
+    // Private constructor to prevent instantiation
+    private SyntheticImageGenerator() {
+    }
+
+    /**
+     * Generates an image.
+     *
+     * @param kind   The kind of image.
+     * @param width  The width in pixels.
+     * @param height The height in pixels.
+     * @param seed   The seed for the random parts of the image.
+     * @return The generated image.
+     */
+    public static BufferedImage generate(Kind kind, int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        switch (kind) {
+            case GRADIENT:
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int r = x * MAX_RGB / Math.max(1, width - 1);
+                        int g = y * MAX_RGB / Math.max(1, height - 1);
+                        image.setRGB(x, y, rgb(r, g, (r + g) / 2));
+                    }
+                }
+                break;
+            case NOISE:
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        image.setRGB(x, y, random.nextInt() & 0xFFFFFF);
+                    }
+                }
+                break;
+            case TEXT:
+                drawText(image, random);
+                break;
+            default: // SPECTRUM
+                drawSpectrum(image, random);
+                break;
+        }
+        return image;
+    }
+
+    /**
+     * Generates an image and writes it as a PNG file.
+     *
+     * @param kind      The kind of image.
+     * @param width     The width in pixels.
+     * @param height    The height in pixels.
+     * @param seed      The seed for the random parts of the image.
+     * @param directory The directory to write the file to.
+     * @return The written file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static File write(Kind kind, int width, int height, long seed, File directory)
+            throws IOException {
+        File file = new File(directory,
+                String.format("%s-%dx%d-%d.png", kind.name().toLowerCase(), width, height, seed));
+        ImageIO.write(generate(kind, width, height, seed), "png", file);
+        return file;
+    }
+
+    private static void drawText(BufferedImage image, Random random) {
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        int lineHeight = Math.max(1, image.getHeight() / TEXT_LINES);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, lineHeight));
+        g.setColor(Color.BLACK);
+        for (int line = 1; line <= TEXT_LINES; line++) {
+            int offset = random.nextInt(TEXT_SAMPLE.length());
+            String text = TEXT_SAMPLE.substring(offset) + TEXT_SAMPLE + TEXT_SAMPLE;
+            g.drawString(text, 0, line * lineHeight);
+        }
+        g.dispose();
+    }
+
+    private static void drawSpectrum(BufferedImage image, Random random) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[][] sum = new double[height][width];
+        double amplitude = 1;
+        double totalAmplitude = 0;
+        int cells = SPECTRUM_BASE_CELLS;
+        for (int octave = 0; octave < SPECTRUM_OCTAVES; octave++) {
+            double[][] lattice = new double[cells + 1][cells + 1];
+            for (double[] row : lattice) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = random.nextDouble();
+                }
+            }
+            for (int y = 0; y < height; y++) {
+                double fy = (double) y * cells / height;
+                int y0 = (int) fy;
+                double ty = fy - y0;
+                for (int x = 0; x < width; x++) {
+                    double fx = (double) x * cells / width;
+                    int x0 = (int) fx;
+                    double tx = fx - x0;
+                    double top = lattice[y0][x0] * (1 - tx) + lattice[y0][x0 + 1] * tx;
+                    double bottom = lattice[y0 + 1][x0] * (1 - tx) + lattice[y0 + 1][x0 + 1] * tx;
+                    sum[y][x] += amplitude * (top * (1 - ty) + bottom * ty);
+                }
+            }
+            totalAmplitude += amplitude;
+            amplitude /= 2;
+            cells *= 2;
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double v = sum[y][x] / totalAmplitude;
+                int r = (int) (v * MAX_RGB);
+                int g = (int) (Math.sqrt(v) * MAX_RGB);
+                int b = (int) (v * v * MAX_RGB);
+                image.setRGB(x, y, rgb(r, g, b));
+            }
+        }
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return (r << 16) | (g << 8) | b;
+    }
+}
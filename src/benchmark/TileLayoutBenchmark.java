@@ -0,0 +1,130 @@
+package benchmark;
+
+import image.Image;
+import image.SubImageManager;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The TileLayoutBenchmark class compares the throughput of computing tile brightness from the
+ * row-major padded image with that of the tile-major (Z-ordered) layout, at every resolution of a
+ * synthetic power-of-two image. For each layout and resolution the best of several runs is reported,
+ * together with the largest difference between the two layouts' brightness values.
+ * <p>
+ * Cache misses are best counted by running one layout at a time under a hardware profiler, e.g.
+ * {@code perf stat -e cache-references,cache-misses java benchmark.TileLayoutBenchmark 2048 rows}
+ * and the same with {@code tiles}.
+ * <p>
+ * Usage: {@code java benchmark.TileLayoutBenchmark [size] [rows|tiles|both] [runs]}
+ *
+ * @ Author: Hadas Elezra
+ */
+public class TileLayoutBenchmark {
+
+    // Constants
+    private static final int DEFAULT_SIZE = 2048; // Side of the synthetic image, a power of two
+    private static final int DEFAULT_RUNS = 10; // Measured runs per resolution; the fastest one counts
+    private static final int WARMUP_RUNS = 3; // Runs per resolution before measuring
+    private static final int MIN_RESOLUTION = 2; // Coarsest resolution measured
+    private static final long SEED = 7; // Seed of the synthetic image
+    private static final String BOTH = "both"; // Layout argument that measures both layouts
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The image size, the layouts to measure and the number of runs.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        String layouts = args.length > 1 ? args[1] : BOTH;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+        if (Integer.bitCount(size) != 1) {
+            System.out.println("Usage: TileLayoutBenchmark [size] [rows|tiles|both] [runs]");
+            System.out.println("The size must be a power of two.");
+            return;
+        }
+        boolean rows = !layouts.equals("tiles");
+        boolean tiles = !layouts.equals("rows");
+
+        Image image = toImage(SyntheticImageGenerator.generate(SyntheticImageGenerator.Kind.NOISE, size, size,
+                SEED));
+        SubImageManager rowMajor = SubImageManager.newInstance(image);
+        SubImageManager tileMajor = SubImageManager.newInstance(image);
+        tileMajor.setTileMajorLayout(true);
+        long pixels = (long) size * size;
+        if (tiles) {
+            long start = System.nanoTime();
+            tileMajor.getBrightnessGrid(1);
+            System.out.printf("Tile-major copy built in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+
+        System.out.printf("%10s %12s %12s %12s %12s %10s%n", "resolution", "rows ms", "rows Mpx/s",
+                "tiles ms", "tiles Mpx/s", "max diff");
+        for (int resolution = MIN_RESOLUTION; resolution <= size; resolution *= 2) {
+            double rowsNanos = rows ? bestNanos(rowMajor, resolution, runs) : Double.NaN;
+            double tilesNanos = tiles ? bestNanos(tileMajor, resolution, runs) : Double.NaN;
+            double difference = rows && tiles ? maxDifference(rowMajor.getBrightnessGrid(resolution),
+                    tileMajor.getBrightnessGrid(resolution)) : Double.NaN;
+            System.out.printf("%10d %12.2f %12.1f %12.2f %12.1f %10.1e%n", resolution, rowsNanos / 1e6,
+                    pixels * 1e3 / rowsNanos, tilesNanos / 1e6, pixels * 1e3 / tilesNanos, difference);
+        }
+    }
+
+    /**
+     * Returns the fastest of several brightness grid computations, after a warm-up.
+     *
+     * @param manager    The manager to compute the grid with.
+     * @param resolution The resolution of the grid.
+     * @param runs       The number of measured runs.
+     * @return The fastest run, in nanoseconds.
+     */
+    private static double bestNanos(SubImageManager manager, int resolution, int runs) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            manager.getBrightnessGrid(resolution);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            manager.getBrightnessGrid(resolution);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the largest absolute difference between two brightness grids of the same shape.
+     *
+     * @param first  The first grid.
+     * @param second The second grid.
+     * @return The largest difference between matching tiles.
+     */
+    private static double maxDifference(double[][] first, double[][] second) {
+        double max = 0;
+        for (int row = 0; row < first.length; row++) {
+            for (int col = 0; col < first[row].length; col++) {
+                max = Math.max(max, Math.abs(first[row][col] - second[row][col]));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Converts a generated image to an Image.
+     *
+     * @param bufferedImage The generated image.
+     * @return The image.
+     */
+    private static Image toImage(BufferedImage bufferedImage) {
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        Color[][] pixels = new Color[height][width];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                pixels[row][col] = new Color(bufferedImage.getRGB(col, row));
+            }
+        }
+        return new Image(pixels, width, height);
+    }
+}
@@ -0,0 +1,219 @@
+package image;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The BrightnessPrecomputeService class computes the brightness grids of every legal resolution of a
+ * padded image in the background, so that a later change of resolution can be served from a ready
+ * grid. Grids are computed one at a time on a single low-priority thread, nearest to the current
+ * resolution first, and each is exactly the grid {@link SubImageManager#getBrightnessGrid(int)}
+ * returns. A resolution whose grid would exceed the memory cap is skipped. Pending work can be
+ * cancelled, and all grids dropped when the settings they depend on change. The service never takes
+ * more than {@link #getMaxBytes()}, so a caller that budgets memory can set that much aside for it.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class BrightnessPrecomputeService {
+
+    // Constants
+    private static final int ARRAY_OVERHEAD = 16; // Approximate header and reference bytes of an array
+
+    /**
+     * The readiness of the grid of one resolution.
+     */
+    public enum State {
+        QUEUED, // Waiting for its turn
+        RUNNING, // Being computed
+        READY, // Computed and available
+        SKIPPED // Not computed, because it would exceed the memory cap
+    }
+
+    // Fields
+    private final SubImageManager subImageManager; // The manager the grids are computed with
+    private final int paddedWidth; // The width of the padded image
+    private final int paddedHeight; // The height of the padded image
+    private final int minResolution; // The smallest legal resolution
+    private final int maxResolution; // The largest legal resolution
+    private final long memoryCapBytes; // The most memory the ready grids may take
+    private final ExecutorService executor; // The single low-priority background thread
+    private final Map<Integer, double[][]> grids; // Ready grids by resolution
+    private final Map<Integer, State> states; // Readiness by resolution, for scheduled resolutions
+    private volatile int generation; // Incremented on every cancellation; stale work stops
+    private long usedBytes; // Memory taken by ready and running grids
+    private Future<?> task; // The current sweep
+
+    /**
+     * Constructs a BrightnessPrecomputeService. No work starts until {@link #start} is called.
+     *
+     * @param subImageManager The manager of the padded image.
+     * @param paddedWidth     The width of the padded image.
+     * @param paddedHeight    The height of the padded image.
+     * @param memoryCapBytes  The most memory the ready grids may take, in bytes.
+     */
+    public BrightnessPrecomputeService(SubImageManager subImageManager, int paddedWidth, int paddedHeight,
+                                       long memoryCapBytes) {
+        this.subImageManager = subImageManager;
+        this.paddedWidth = paddedWidth;
+        this.paddedHeight = paddedHeight;
+        this.minResolution = Math.max(1, paddedWidth / paddedHeight);
+        this.maxResolution = paddedWidth;
+        this.memoryCapBytes = memoryCapBytes;
+        this.grids = new ConcurrentHashMap<>();
+        this.states = new ConcurrentHashMap<>();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "brightness-precompute");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts, or restarts, the sweep over the legal resolutions that are not ready yet, nearest to the
+     * given resolution first; of two equally near resolutions, the coarser one goes first.
+     * Pending work of a previous sweep is cancelled, but its ready grids are kept.
+     *
+     * @param currentResolution The resolution currently in use.
+     */
+    public synchronized void start(int currentResolution) {
+        cancel();
+        int currentLevel = Integer.numberOfTrailingZeros(currentResolution);
+        List<Integer> order = new ArrayList<>();
+        for (int resolution = minResolution; resolution <= maxResolution; resolution *= 2) {
+            if (states.get(resolution) != State.READY) {
+                order.add(resolution);
+                states.put(resolution, State.QUEUED);
+            }
+        }
+        order.sort(Comparator.comparingInt((Integer resolution) ->
+                Math.abs(Integer.numberOfTrailingZeros(resolution) - currentLevel))
+                .thenComparingInt(resolution -> resolution));
+        int sweep = generation;
+        task = executor.submit(() -> sweep(order, sweep));
+    }
+
+    /**
+     * Cancels the pending and running work. Ready grids are kept.
+     */
+    public synchronized void cancel() {
+        generation++;
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        states.values().removeIf(state -> state != State.READY);
+    }
+
+    /**
+     * Cancels the pending work and drops every ready grid, for when the image's brightness grids
+     * change, e.g. with the pixel layout.
+     */
+    public synchronized void invalidate() {
+        cancel();
+        for (double[][] grid : grids.values()) {
+            usedBytes -= estimateBytes(grid.length, grid.length == 0 ? 0 : grid[0].length);
+        }
+        grids.clear();
+        states.clear();
+    }
+
+    /**
+     * Cancels the work and stops the background thread.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the grid of a resolution if it is ready.
+     *
+     * @param resolution The number of characters in a row.
+     * @return The brightness grid, or null if it is not ready.
+     */
+    public double[][] getReadyGrid(int resolution) {
+        return grids.get(resolution);
+    }
+
+    /**
+     * Returns the readiness of the grid of a resolution.
+     *
+     * @param resolution The number of characters in a row.
+     * @return The state of the grid, or null if it is not scheduled.
+     */
+    public State getState(int resolution) {
+        return states.get(resolution);
+    }
+
+    /**
+     * @return The memory taken by the ready and running grids, in bytes.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the most memory the grids can take: the memory cap, or the memory of the grids of every
+     * legal resolution if they take less.
+     *
+     * @return The most memory the grids can take, in bytes.
+     */
+    public long getMaxBytes() {
+        long allGrids = 0;
+        for (int resolution = minResolution; resolution <= maxResolution; resolution *= 2) {
+            allGrids += estimateBytes(paddedHeight / (paddedWidth / resolution), resolution);
+        }
+        return Math.min(memoryCapBytes, allGrids);
+    }
+
+    /**
+     * Computes the grids of a sweep in order, until the sweep is cancelled.
+     *
+     * @param order The resolutions to compute, in order.
+     * @param sweep The generation the sweep belongs to.
+     */
+    private void sweep(List<Integer> order, int sweep) {
+        for (int resolution : order) {
+            int numRows = paddedHeight / (paddedWidth / resolution);
+            long bytes = estimateBytes(numRows, resolution);
+            synchronized (this) {
+                if (generation != sweep) {
+                    return;
+                }
+                if (usedBytes + bytes > memoryCapBytes) {
+                    states.put(resolution, State.SKIPPED);
+                    continue;
+                }
+                usedBytes += bytes;
+                states.put(resolution, State.RUNNING);
+            }
+            double[][] grid = subImageManager.getBrightnessGrid(resolution, () -> generation != sweep);
+            synchronized (this) {
+                if (grid == null || generation != sweep) {
+                    usedBytes -= bytes;
+                    return;
+                }
+                grids.put(resolution, grid);
+                states.put(resolution, State.READY);
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory a brightness grid takes.
+     *
+     * @param numRows The number of rows of the grid.
+     * @param numCols The number of columns of the grid.
+     * @return The estimated size in bytes.
+     */
+    private static long estimateBytes(int numRows, int numCols) {
+        return (long) numRows * ((long) numCols * Double.BYTES + ARRAY_OVERHEAD) + ARRAY_OVERHEAD;
+    }
+}
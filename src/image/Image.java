@@ -1,10 +1,13 @@
 package image;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * A package-private class of the package image.
@@ -37,6 +40,29 @@ public class Image {
         this.height = height;
     }
 
+    /**
+     * Reads the dimensions of an image file from its header, without decoding the pixels.
+     *
+     * @param filename the image file
+     * @return the width and height of the image
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public static Dimension readDimensions(String filename) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image: " + filename);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
     public int getWidth() {
         return width;
     }
@@ -1,6 +1,14 @@
 package image;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * The ImagePaddingManager class is responsible for padding an image with white pixels
@@ -54,13 +62,66 @@ public class ImagePaddingManager {
         return new Image(paddedPixelArray, paddedWidth, paddedHeight);
     }
 
+    /**
+     * Reads a horizontal band of the padded version of an image file, decoding only the source rows
+     * that fall inside the band. The band has the same pixels as the matching rows of
+     * {@link #padImageToPowerOfTwo} applied to the whole image.
+     *
+     * @param filename the image file
+     * @param startRow the first row of the band, in padded image coordinates
+     * @param numRows  the height of the band
+     * @return the band, as wide as the padded image
+     * @throws IOException if the file cannot be read
+     */
+    public static Image readPaddedBand(String filename, int startRow, int numRows) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image: " + filename);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int paddedWidth = nextPowerOfTwo(width);
+                int offsetRow = (nextPowerOfTwo(height) - height) / 2;
+                int offsetCol = (paddedWidth - width) / 2;
+
+                Color[][] band = new Color[numRows][paddedWidth];
+                for (Color[] row : band) {
+                    for (int col = 0; col < paddedWidth; col++) {
+                        row[col] = new Color(PADDING_COLOR.getRGB());
+                    }
+                }
+                // Source rows overlapping the band
+                int firstSourceRow = Math.max(0, startRow - offsetRow);
+                int lastSourceRow = Math.min(height, startRow + numRows - offsetRow);
+                if (firstSourceRow < lastSourceRow) {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceRegion(new Rectangle(0, firstSourceRow, width, lastSourceRow - firstSourceRow));
+                    BufferedImage region = reader.read(0, param);
+                    for (int r = 0; r < region.getHeight(); r++) {
+                        Color[] row = band[offsetRow + firstSourceRow + r - startRow];
+                        for (int c = 0; c < width; c++) {
+                            row[offsetCol + c] = new Color(region.getRGB(c, r));
+                        }
+                    }
+                }
+                return new Image(band, paddedWidth, numRows);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
     /**
      * Calculates the next power of two greater than or equal to the given number.
      *
      * @param number the number to find the next power of two for
      * @return the next power of two greater than or equal to the given number
      */
-    private static int nextPowerOfTwo(int number) {
+    public static int nextPowerOfTwo(int number) {
         int power = 1;
         while (power < number) {
             power *= 2;
@@ -2,6 +2,8 @@ package image;
 
 import java.awt.*;
 import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
 
 
 /**
@@ -17,12 +19,17 @@ public class SubImageManager {
     private static final double RED_COEFFICIENT = 0.2126; // Coefficient for red channel
     private static final double GREEN_COEFFICIENT = 0.7152; // Coefficient for green channel
     private static final double BLUE_COEFFICIENT = 0.0722; // Coefficient for blue channel
+    private static final int INITIAL_STRATA = 4; // Strata per side of a tile in the first sampling round
+    private static final double CONFIDENCE_Z = 2.0; // Standard errors the sampled mean must stay within
+    public static final int SAMPLING_CONFIDENCE_PERCENT = 95; // Confidence that a sampled tile is within tolerance
     private static SubImageManager instance; // Singleton instance
 
     // Fields
     private final Image paddedImageCache; // Cache for the padded image
     private Image[][] subImagesCache; // Cache for the sub-images
     private int lastResolution; // Last used resolution
+    private volatile boolean tileMajorLayout; // Whether tile brightness is read from a Z-ordered copy
+    private TileMajorImage tileMajorImage; // Z-ordered copy of the padded image, built on first use
 
     /**
      * Private constructor to prevent instantiation from outside the class.
@@ -48,6 +55,17 @@ public class SubImageManager {
         return instance;
     }
 
+    /**
+     * Returns a new SubImageManager that is not shared with the singleton instance.
+     * Used when several images are rendered at once, each by its own manager.
+     *
+     * @param paddedImage The padded image to be managed.
+     * @return A new SubImageManager for the image.
+     */
+    public static SubImageManager newInstance(Image paddedImage) {
+        return new SubImageManager(paddedImage);
+    }
+
     /**
      * Returns the sub-images of the padded image.
      *
@@ -108,6 +126,184 @@ public class SubImageManager {
         return new Image(subImagePixels, width, height);
     }
 
+    /**
+     * Sets whether tile brightness is computed from a tile-major (Z-ordered) copy of the padded image,
+     * in which every tile is one contiguous range. The copy is built on first use and then kept.
+     *
+     * @param tileMajor True for the tile-major layout, false for the row-major padded image.
+     */
+    public void setTileMajorLayout(boolean tileMajor) {
+        this.tileMajorLayout = tileMajor;
+    }
+
+    /**
+     * @return Whether tile brightness is computed from the tile-major layout.
+     */
+    public boolean isTileMajorLayout() {
+        return tileMajorLayout;
+    }
+
+    /**
+     * Returns the brightness of every sub-image at the given resolution.
+     * The tiles are read straight from the padded image rather than copied out first, and tile rows
+     * are computed in parallel. Each value equals {@link #calculateBrightness} of the matching sub-image,
+     * or, in the tile-major layout, equals it up to floating-point rounding.
+     *
+     * @param numCharsInRow The number of characters in a row.
+     * @return A 2D array of brightness values, one per sub-image.
+     */
+    public double[][] getBrightnessGrid(int numCharsInRow) {
+        if (tileMajorLayout) {
+            return getTileMajorImage().getBrightnessGrid(numCharsInRow);
+        }
+        int squareSize = paddedImageCache.getWidth() / numCharsInRow;
+        double[][] grid = new double[paddedImageCache.getHeight() / squareSize][numCharsInRow];
+        IntStream.range(0, grid.length).parallel().forEach(row -> fillBrightnessRow(grid, row, squareSize));
+        return grid;
+    }
+
+    /**
+     * Returns the same brightness grid as {@link #getBrightnessGrid(int)}, computed serially on the
+     * calling thread so that it can run in the background without competing for other threads.
+     * The computation stops early, between rows of tiles, once it is cancelled.
+     *
+     * @param numCharsInRow The number of characters in a row.
+     * @param cancelled     Whether the computation was cancelled.
+     * @return A 2D array of brightness values, one per sub-image, or null if cancelled.
+     */
+    public double[][] getBrightnessGrid(int numCharsInRow, BooleanSupplier cancelled) {
+        if (tileMajorLayout) {
+            return getTileMajorImage().getBrightnessGrid(numCharsInRow, cancelled);
+        }
+        int squareSize = paddedImageCache.getWidth() / numCharsInRow;
+        double[][] grid = new double[paddedImageCache.getHeight() / squareSize][numCharsInRow];
+        for (int row = 0; row < grid.length; row++) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            fillBrightnessRow(grid, row, squareSize);
+        }
+        return grid;
+    }
+
+    /**
+     * Computes the brightness of one row of tiles.
+     *
+     * @param grid       The brightness grid to fill.
+     * @param row        The row of tiles.
+     * @param squareSize The side of a tile.
+     */
+    private void fillBrightnessRow(double[][] grid, int row, int squareSize) {
+        for (int col = 0; col < grid[row].length; col++) {
+            grid[row][col] = calculateBrightness(paddedImageCache, row * squareSize, col * squareSize,
+                    squareSize, squareSize);
+        }
+    }
+
+    /**
+     * Returns the tile-major copy of the padded image, building it on first use.
+     *
+     * @return The tile-major image.
+     */
+    private synchronized TileMajorImage getTileMajorImage() {
+        if (tileMajorImage == null) {
+            tileMajorImage = new TileMajorImage(paddedImageCache);
+        }
+        return tileMajorImage;
+    }
+
+    /**
+     * Returns an estimate of the brightness of every sub-image at the given resolution, made from a
+     * stratified sample of each tile's pixels. A tile is split into k by k strata and one pixel is
+     * taken from each; k is doubled until the sample mean is within the tolerance at about 95%
+     * confidence, and a tile that cannot be sampled that tightly is computed exactly.
+     *
+     * @param numCharsInRow The number of characters in a row.
+     * @param tolerance     The largest acceptable error of a tile's brightness.
+     * @return A 2D array of estimated brightness values, one per sub-image.
+     */
+    public double[][] getSampledBrightnessGrid(int numCharsInRow, double tolerance) {
+        int squareSize = paddedImageCache.getWidth() / numCharsInRow;
+        int numRows = paddedImageCache.getHeight() / squareSize;
+        double[][] grid = new double[numRows][numCharsInRow];
+        IntStream.range(0, numRows).parallel().forEach(row -> {
+            for (int col = 0; col < numCharsInRow; col++) {
+                grid[row][col] = sampleBrightness(row * squareSize, col * squareSize, squareSize, tolerance);
+            }
+        });
+        return grid;
+    }
+
+    /**
+     * Estimates the brightness of one square tile by stratified sampling.
+     *
+     * @param startRow  The starting row of the tile.
+     * @param startCol  The starting column of the tile.
+     * @param size      The size of the tile.
+     * @param tolerance The largest acceptable error.
+     * @return The estimated brightness of the tile.
+     */
+    private double sampleBrightness(int startRow, int startCol, int size, double tolerance) {
+        long tilePixels = (long) size * size;
+        for (int strata = INITIAL_STRATA; strata < size; strata *= 2) {
+            int stratumSize = size / strata;
+            int numSamples = strata * strata;
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int i = 0; i < strata; i++) {
+                for (int j = 0; j < strata; j++) {
+                    // A deterministic jitter inside the stratum, so regular patterns do not alias.
+                    int hash = (startRow + i) * 0x9E3779B1 ^ (startCol + j) * 0x85EBCA6B ^ strata * 0xC2B2AE35;
+                    hash ^= hash >>> 15;
+                    int r = startRow + i * stratumSize + Math.floorMod(hash, stratumSize);
+                    int c = startCol + j * stratumSize + Math.floorMod(hash >>> 8, stratumSize);
+                    double grey = greyLevel(paddedImageCache.getPixel(r, c)) / MAX_RGB;
+                    sum += grey;
+                    sumOfSquares += grey * grey;
+                }
+            }
+            double mean = sum / numSamples;
+            double variance = Math.max(0, (sumOfSquares - numSamples * mean * mean) / (numSamples - 1));
+            double finitePopulation = 1 - (double) numSamples / tilePixels;
+            double standardError = Math.sqrt(variance / numSamples * finitePopulation);
+            if (CONFIDENCE_Z * standardError <= tolerance) {
+                return mean;
+            }
+        }
+        return calculateBrightness(paddedImageCache, startRow, startCol, size, size);
+    }
+
+    /**
+     * Returns the average color of every sub-image at the given resolution.
+     *
+     * @param numCharsInRow The number of characters in a row.
+     * @return A 2D array of colors, one per sub-image.
+     */
+    public Color[][] getColorGrid(int numCharsInRow) {
+        int squareSize = paddedImageCache.getWidth() / numCharsInRow;
+        int numRows = paddedImageCache.getHeight() / squareSize;
+        Color[][] grid = new Color[numRows][numCharsInRow];
+        IntStream.range(0, numRows).parallel().forEach(row -> {
+            for (int col = 0; col < numCharsInRow; col++) {
+                long red = 0;
+                long green = 0;
+                long blue = 0;
+                for (int r = row * squareSize; r < (row + 1) * squareSize; r++) {
+                    for (int c = col * squareSize; c < (col + 1) * squareSize; c++) {
+                        Color pixelColor = paddedImageCache.getPixel(r, c);
+                        red += pixelColor.getRed();
+                        green += pixelColor.getGreen();
+                        blue += pixelColor.getBlue();
+                    }
+                }
+                long numPixels = (long) squareSize * squareSize;
+                grid[row][col] = new Color((int) (red / numPixels), (int) (green / numPixels),
+                        (int) (blue / numPixels));
+            }
+        });
+        return grid;
+    }
+
     /**
      * Calculates the brightness of an image.
      *
@@ -115,20 +311,39 @@ public class SubImageManager {
      * @return The brightness value of the image.
      */
     public double calculateBrightness(Image image) {
-        int numRows = image.getHeight();
-        int numCols = image.getWidth();
+        return calculateBrightness(image, 0, 0, image.getHeight(), image.getWidth());
+    }
 
+    /**
+     * Calculates the brightness of a rectangular region of an image.
+     *
+     * @param image    The image containing the region.
+     * @param startRow The starting row of the region.
+     * @param startCol The starting column of the region.
+     * @param numRows  The height of the region.
+     * @param numCols  The width of the region.
+     * @return The brightness value of the region.
+     */
+    private static double calculateBrightness(Image image, int startRow, int startCol, int numRows,
+                                              int numCols) {
         double sumBrightness = 0;
 
-        for (int row = 0; row < numRows; row++) {
-            for (int col = 0; col < numCols; col++) {
-                Color pixelColor = image.getPixel(row, col);
-                double greyPixel =
-                        pixelColor.getRed() * RED_COEFFICIENT + pixelColor.getGreen() * GREEN_COEFFICIENT +
-                                pixelColor.getBlue() * BLUE_COEFFICIENT;
-                sumBrightness += greyPixel;
+        for (int row = startRow; row < startRow + numRows; row++) {
+            for (int col = startCol; col < startCol + numCols; col++) {
+                sumBrightness += greyLevel(image.getPixel(row, col));
             }
         }
         return sumBrightness / (numRows * numCols) / MAX_RGB;
     }
+
+    /**
+     * Calculates the grey level of a pixel, between 0 and MAX_RGB.
+     *
+     * @param pixelColor The pixel.
+     * @return The grey level of the pixel.
+     */
+    private static double greyLevel(Color pixelColor) {
+        return pixelColor.getRed() * RED_COEFFICIENT + pixelColor.getGreen() * GREEN_COEFFICIENT +
+                pixelColor.getBlue() * BLUE_COEFFICIENT;
+    }
 }
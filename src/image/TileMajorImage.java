@@ -0,0 +1,162 @@
+package image;
+
+import java.awt.*;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * The TileMajorImage class holds the pixels of a padded image in Morton (Z-order) layout.
+ * The dimensions of a padded image are powers of two, so every aligned power-of-two square tile
+ * of it occupies one contiguous range of the pixel array. Computing the brightness of a tile, at
+ * any resolution, is then a sequential scan of that range instead of a walk over many short rows.
+ *
+ * @ Author: Hadas Elezra
+ */
+public class TileMajorImage {
+
+    // Constants
+    private static final int MAX_RGB = 255; // Maximum value for RGB
+    private static final double RED_COEFFICIENT = 0.2126; // Coefficient for red channel
+    private static final double GREEN_COEFFICIENT = 0.7152; // Coefficient for green channel
+    private static final double BLUE_COEFFICIENT = 0.0722; // Coefficient for blue channel
+
+    // Fields
+    private final int[] pixels; // Packed RGB pixels in Morton order
+    private final int width; // The width of the image
+    private final int height; // The height of the image
+    private final int blockSize; // The side of the square blocks the Z-curve fills, min(width, height)
+    private final int blockBits; // log2 of the block size
+
+    /**
+     * Constructs a TileMajorImage with the pixels of a padded image.
+     *
+     * @param paddedImage The padded image.
+     * @throws IllegalArgumentException If the dimensions of the image are not powers of two.
+     */
+    public TileMajorImage(Image paddedImage) {
+        this.width = paddedImage.getWidth();
+        this.height = paddedImage.getHeight();
+        if (Integer.bitCount(width) != 1 || Integer.bitCount(height) != 1) {
+            throw new IllegalArgumentException("Image dimensions must be powers of two");
+        }
+        this.blockSize = Math.min(width, height);
+        this.blockBits = Integer.numberOfTrailingZeros(blockSize);
+        this.pixels = new int[width * height];
+        IntStream.range(0, height).parallel().forEach(row -> {
+            for (int col = 0; col < width; col++) {
+                pixels[indexOf(row, col)] = paddedImage.getPixel(row, col).getRGB() & 0xFFFFFF;
+            }
+        });
+    }
+
+    /**
+     * @return The width of the image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns a pixel of the image.
+     *
+     * @param row The row of the pixel.
+     * @param col The column of the pixel.
+     * @return The color of the pixel.
+     */
+    public Color getPixel(int row, int col) {
+        return new Color(pixels[indexOf(row, col)]);
+    }
+
+    /**
+     * Returns the brightness of every tile at the given resolution.
+     * Each tile is scanned as one contiguous range and tile rows are computed in parallel. The result
+     * equals the row-major computation up to the floating-point rounding of summing in a different order.
+     *
+     * @param numCharsInRow The number of characters in a row.
+     * @return A 2D array of brightness values, one per tile.
+     */
+    public double[][] getBrightnessGrid(int numCharsInRow) {
+        int squareSize = width / numCharsInRow;
+        double[][] grid = new double[height / squareSize][numCharsInRow];
+        IntStream.range(0, grid.length).parallel().forEach(row -> fillBrightnessRow(grid, row, squareSize));
+        return grid;
+    }
+
+    /**
+     * Returns the same brightness grid as {@link #getBrightnessGrid(int)}, computed serially on the
+     * calling thread. The computation stops early, between rows of tiles, once it is cancelled.
+     *
+     * @param numCharsInRow The number of characters in a row.
+     * @param cancelled     Whether the computation was cancelled.
+     * @return A 2D array of brightness values, one per tile, or null if cancelled.
+     */
+    public double[][] getBrightnessGrid(int numCharsInRow, BooleanSupplier cancelled) {
+        int squareSize = width / numCharsInRow;
+        double[][] grid = new double[height / squareSize][numCharsInRow];
+        for (int row = 0; row < grid.length; row++) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            fillBrightnessRow(grid, row, squareSize);
+        }
+        return grid;
+    }
+
+    /**
+     * Computes the brightness of one row of tiles, scanning each tile as one contiguous range.
+     *
+     * @param grid       The brightness grid to fill.
+     * @param row        The row of tiles.
+     * @param squareSize The side of a tile.
+     */
+    private void fillBrightnessRow(double[][] grid, int row, int squareSize) {
+        int tilePixels = squareSize * squareSize;
+        for (int col = 0; col < grid[row].length; col++) {
+            int start = indexOf(row * squareSize, col * squareSize);
+            double sumBrightness = 0;
+            for (int i = start; i < start + tilePixels; i++) {
+                int rgb = pixels[i];
+                sumBrightness += ((rgb >> 16) & MAX_RGB) * RED_COEFFICIENT +
+                        ((rgb >> 8) & MAX_RGB) * GREEN_COEFFICIENT + (rgb & MAX_RGB) * BLUE_COEFFICIENT;
+            }
+            grid[row][col] = sumBrightness / tilePixels / MAX_RGB;
+        }
+    }
+
+    /**
+     * Returns the position of a pixel in the Morton-ordered array.
+     * The image is a row or column of square blocks; within a block, the bits of the row and the
+     * column are interleaved.
+     *
+     * @param row The row of the pixel.
+     * @param col The column of the pixel.
+     * @return The index of the pixel.
+     */
+    private int indexOf(int row, int col) {
+        int block = (row >> blockBits) * (width >> blockBits) + (col >> blockBits);
+        return (block << (2 * blockBits)) | (spreadBits(row & (blockSize - 1)) << 1) |
+                spreadBits(col & (blockSize - 1));
+    }
+
+    /**
+     * Spreads the low 16 bits of a number to the even bit positions.
+     *
+     * @param value The number.
+     * @return The number with a zero bit inserted above each of its bits.
+     */
+    private static int spreadBits(int value) {
+        int spread = value & 0xFFFF;
+        spread = (spread | (spread << 8)) & 0x00FF00FF;
+        spread = (spread | (spread << 4)) & 0x0F0F0F0F;
+        spread = (spread | (spread << 2)) & 0x33333333;
+        spread = (spread | (spread << 1)) & 0x55555555;
+        return spread;
+    }
+}
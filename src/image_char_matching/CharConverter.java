@@ -2,6 +2,9 @@ package image_char_matching;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * Inspired by, and partly copied from
@@ -11,6 +14,8 @@ import java.awt.image.BufferedImage;
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel and again by Rachel Behar.
  * The class converts characters to a binary "image" (2D array of booleans).
+ * Each thread draws on its own canvas, which is cleared and reused for every glyph, so large
+ * charsets can be rasterized in parallel.
  */
 public class CharConverter {
     private static final double X_OFFSET_FACTOR = 0.2;
@@ -18,32 +23,55 @@ public class CharConverter {
     private static final String FONT_NAME = "Courier New";
     public static final int DEFAULT_PIXEL_RESOLUTION = 16;
 
+    private static final ThreadLocal<Canvas> CANVAS = ThreadLocal.withInitial(
+            () -> new Canvas(FONT_NAME, DEFAULT_PIXEL_RESOLUTION));
+
+    /**
+     * A reusable image, its pixels and a graphics context set up with the font.
+     */
+    private static class Canvas {
+        private final int[] pixels;
+        private final Graphics g;
+
+        Canvas(String fontName, int pixelsPerRow) {
+            BufferedImage img = new BufferedImage(pixelsPerRow, pixelsPerRow, BufferedImage.TYPE_INT_ARGB);
+            pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            g = img.getGraphics();
+            g.setFont(new Font(fontName, Font.PLAIN, pixelsPerRow));
+        }
+    }
+
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
      */
     public static boolean[][] convertToBoolArray(char c) {
-        BufferedImage img = getBufferedImage(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
+        Canvas canvas = CANVAS.get();
+        drawChar(canvas, c, DEFAULT_PIXEL_RESOLUTION);
         boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][DEFAULT_PIXEL_RESOLUTION];
         for (int y = 0; y < DEFAULT_PIXEL_RESOLUTION; y++) {
             for (int x = 0; x < DEFAULT_PIXEL_RESOLUTION; x++) {
-                matrix[y][x] = img.getRGB(x, y) == 0; //is the color black
+                matrix[y][x] = canvas.pixels[y * DEFAULT_PIXEL_RESOLUTION + x] == 0; //is the color black
             }
         }
         return matrix;
     }
 
-    private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
-        String charStr = Character.toString(c);
-        Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
-        BufferedImage img = new BufferedImage(pixelsPerRow, pixelsPerRow, BufferedImage.TYPE_INT_ARGB);
-        Graphics g = img.getGraphics();
-        g.setFont(font);
+    /**
+     * Renders several characters in parallel, as {@link #convertToBoolArray} does one.
+     */
+    public static boolean[][][] convertToBoolArrays(char[] chars) {
+        boolean[][][] matrices = new boolean[chars.length][][];
+        IntStream.range(0, chars.length).parallel().forEach(i -> matrices[i] = convertToBoolArray(chars[i]));
+        return matrices;
+    }
+
+    private static void drawChar(Canvas canvas, char c, int pixelsPerRow) {
+        Arrays.fill(canvas.pixels, 0);
         int xOffset = (int) Math.round(pixelsPerRow * X_OFFSET_FACTOR);
         int yOffset = (int) Math.round(pixelsPerRow * Y_OFFSET_FACTOR);
-        g.drawString(charStr, xOffset, yOffset);
-        return img;
+        canvas.g.drawString(Character.toString(c), xOffset, yOffset);
     }
 
 }
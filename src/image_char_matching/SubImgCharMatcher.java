@@ -21,9 +21,41 @@ public class SubImgCharMatcher {
      */
     private final Map<Character, Double> brightnessMap;
     /**
-     * A map of normalized brightness values to lists of characters.
+     * The distinct normalized brightness levels, in ascending order. Together with
+     * {@link #levelChars} this is the index lookups binary-search, kept in primitive arrays so that
+     * charsets of thousands of glyphs stay compact.
      */
-    private final TreeMap<Double, List<Character>> normalizedBrightnessMap;
+    private double[] levels;
+    /**
+     * The smallest character at each brightness level.
+     */
+    private char[] levelChars;
+    /**
+     * The characters of the set, in ascending order, for looking up their normalized brightness.
+     */
+    private char[] indexedChars;
+    /**
+     * The normalized brightness of each character of {@link #indexedChars}.
+     */
+    private double[] indexedBrightness;
+
+    /**
+     * Characters that were added but not yet rasterized. Glyphs are rendered lazily, on the first
+     * brightness lookup, so that creating a matcher or editing its charset never loads the AWT font
+     * machinery.
+     */
+    private final Set<Character> pendingChars;
+
+    /**
+     * Whether the normalized brightness map is out of date with respect to the brightness map.
+     */
+    private boolean normalizationDirty;
+
+    /**
+     * Whether there are pending characters or the normalization is dirty. Volatile, so that a lookup
+     * that sees it clear also sees the lookup index it was cleared after, without taking the lock.
+     */
+    private volatile boolean brightnessStale;
 
     /**
      * The rounding method used for matching characters to brightness values.
@@ -48,43 +80,98 @@ public class SubImgCharMatcher {
         }
         this.roundingMethod = DEFAULT_ROUND;
         this.brightnessMap = new HashMap<>();
-        this.normalizedBrightnessMap = new TreeMap<>();
-        calculateBrightness();
+        this.levels = new double[0];
+        this.levelChars = new char[0];
+        this.indexedChars = new char[0];
+        this.indexedBrightness = new double[0];
+        this.pendingChars = new HashSet<>(charSet);
+        this.normalizationDirty = true;
+        this.brightnessStale = true;
+    }
+
+    /**
+     * Calculates the brightness for each pending character and re-normalizes if anything changed.
+     * Called before every lookup, so the glyphs are rasterized at most once per character. All the
+     * characters added since the last lookup are rasterized as one parallel batch, and normalized once.
+     * The work is done under the matcher's lock, so the first lookups may come from several threads
+     * at once; once it is done, lookups only read a volatile flag.
+     */
+    private void ensureBrightnessCalculated() {
+        if (brightnessStale) {
+            synchronized (this) {
+                if (brightnessStale) {
+                    recalculateBrightness();
+                    brightnessStale = false;
+                }
+            }
+        }
     }
 
     /**
-     * Calculates the brightness for each character in the character set.
+     * Rasterizes the pending characters and re-normalizes if anything changed.
      */
-    private void calculateBrightness() {
-        for (char c : charSet) {
-            boolean[][] boolArray = CharConverter.convertToBoolArray(c);
-            double brightness = calculateArrayBrightness(boolArray);
-            brightnessMap.put(c, brightness);
+    private void recalculateBrightness() {
+        if (!pendingChars.isEmpty()) {
+            char[] batch = new char[pendingChars.size()];
+            int i = 0;
+            for (char c : pendingChars) {
+                batch[i++] = c;
+            }
+            boolean[][][] boolArrays = CharConverter.convertToBoolArrays(batch);
+            for (i = 0; i < batch.length; i++) {
+                brightnessMap.put(batch[i], calculateArrayBrightness(boolArrays[i]));
+            }
+            pendingChars.clear();
+            normalizationDirty = true;
+        }
+        if (normalizationDirty) {
+            normalizeBrightness();
+            normalizationDirty = false;
         }
-        normalizeBrightness();
     }
 
     /**
-     * Normalizes the brightness values of the characters.
+     * Normalizes the brightness values of the characters and rebuilds the lookup index.
      */
     private void normalizeBrightness() {
-        if (brightnessMap.isEmpty()) {
-            return;
+        int size = brightnessMap.size();
+        char[] chars = new char[size];
+        int i = 0;
+        for (char c : brightnessMap.keySet()) {
+            chars[i++] = c;
+        }
+        Arrays.sort(chars);
+        double[] brightness = new double[size];
+        if (size > 0) {
+            double minBrightness = Collections.min(brightnessMap.values());
+            double maxBrightness = Collections.max(brightnessMap.values());
+            double brightnessRange = maxBrightness - minBrightness;
+            for (i = 0; i < size; i++) {
+                brightness[i] = (brightnessMap.get(chars[i]) - minBrightness) / brightnessRange;
+            }
         }
-        double minBrightness = Collections.min(brightnessMap.values());
-        double maxBrightness = Collections.max(brightnessMap.values());
 
-        normalizedBrightnessMap.clear();
-        double brightnessRange = maxBrightness - minBrightness;
-        for (Map.Entry<Character, Double> entry : brightnessMap.entrySet()) {
-            double normalizedBrightness = (entry.getValue() - minBrightness) / brightnessRange;
-            normalizedBrightnessMap
-                    .computeIfAbsent(normalizedBrightness, k -> new ArrayList<>())
-                    .add(entry.getKey());
+        // Sort the characters by brightness; the stable sort keeps the smallest character of each
+        // level first.
+        Integer[] order = new Integer[size];
+        for (i = 0; i < size; i++) {
+            order[i] = i;
         }
-        for (List<Character> chars : normalizedBrightnessMap.values()) {
-            chars.sort(Comparator.naturalOrder());
+        Arrays.sort(order, (a, b) -> Double.compare(brightness[a], brightness[b]));
+        double[] newLevels = new double[size];
+        char[] newLevelChars = new char[size];
+        int numLevels = 0;
+        for (int index : order) {
+            if (numLevels == 0 || Double.compare(newLevels[numLevels - 1], brightness[index]) != 0) {
+                newLevels[numLevels] = brightness[index];
+                newLevelChars[numLevels] = chars[index];
+                numLevels++;
+            }
         }
+        this.levels = Arrays.copyOf(newLevels, numLevels);
+        this.levelChars = Arrays.copyOf(newLevelChars, numLevels);
+        this.indexedChars = chars;
+        this.indexedBrightness = brightness;
     }
 
     /**
@@ -112,40 +199,76 @@ public class SubImgCharMatcher {
      * @return the character that best matches the brightness value
      */
     public char getCharByImageBrightness(double brightness) {
-        Map.Entry<Double, List<Character>> lower = normalizedBrightnessMap.floorEntry(brightness);
-        Map.Entry<Double, List<Character>> higher = normalizedBrightnessMap.ceilingEntry(brightness);
+        ensureBrightnessCalculated();
+        int index = Arrays.binarySearch(levels, brightness);
+        if (index >= 0) {
+            return levelChars[index];
+        }
+        int higher = -index - 1;
+        int lower = higher - 1;
 
-        if (lower == null) {
-            return higher.getValue().get(0);
+        if (lower < 0) {
+            return levelChars[higher];
         }
-        if (higher == null) {
-            return lower.getValue().get(0);
+        if (higher == levels.length) {
+            return levelChars[lower];
         }
 
         switch (roundingMethod) {
             case "up":
-                return higher.getValue().get(0);
+                return levelChars[higher];
             case "down":
-                return lower.getValue().get(0);
+                return levelChars[lower];
             default: // "abs"
-                double diffLower = Math.abs(brightness - lower.getKey());
-                double diffHigher = Math.abs(brightness - higher.getKey());
-                return (diffLower <= diffHigher) ? lower.getValue().get(0) : higher.getValue().get(0);
+                double diffLower = Math.abs(brightness - levels[lower]);
+                double diffHigher = Math.abs(brightness - levels[higher]);
+                return (diffLower <= diffHigher) ? levelChars[lower] : levelChars[higher];
         }
     }
 
+    /**
+     * Gets the normalized brightness of a character, on the same scale that
+     * {@link #getCharByImageBrightness} matches image brightness against.
+     * Lookups may be made from several threads, as long as the charset is not changed meanwhile.
+     *
+     * @param c a character of the character set
+     * @return the normalized brightness of the character
+     * @throws IllegalArgumentException if the character is not in the character set
+     */
+    public double getCharBrightness(char c) {
+        ensureBrightnessCalculated();
+        int index = Arrays.binarySearch(indexedChars, c);
+        if (index < 0) {
+            throw new IllegalArgumentException("Character is not in the character set: " + c);
+        }
+        return indexedBrightness[index];
+    }
+
+    /**
+     * Gets the smallest gap between two adjacent normalized brightness levels. An error in image
+     * brightness smaller than half of it can move a match by at most one level.
+     *
+     * @return the smallest gap between adjacent levels, or 1 if there are fewer than two levels
+     */
+    public double getMinBrightnessGap() {
+        ensureBrightnessCalculated();
+        double minGap = 1;
+        for (int i = 1; i < levels.length; i++) {
+            minGap = Math.min(minGap, levels[i] - levels[i - 1]);
+        }
+        return minGap;
+    }
+
     /**
      * Adds a character to the character set and updates the brightness values.
      *
      * @param c the character to be added
      */
-    public void addChar(char c) {
+    public synchronized void addChar(char c) {
         if (!charSet.contains(c)) {
             charSet.add(c);
-            boolean[][] boolArray = CharConverter.convertToBoolArray(c);
-            double brightness = calculateArrayBrightness(boolArray);
-            brightnessMap.put(c, brightness);
-            normalizeBrightness();
+            pendingChars.add(c);
+            brightnessStale = true;
         }
     }
 
@@ -155,11 +278,14 @@ public class SubImgCharMatcher {
      *
      * @param c the character to be removed
      */
-    public void removeChar(char c) {
-        if (brightnessMap.containsKey(c)) {
-            brightnessMap.remove(c);
+    public synchronized void removeChar(char c) {
+        if (charSet.contains(c)) {
             charSet.remove(c);
-            normalizeBrightness();
+            pendingChars.remove(c);
+            if (brightnessMap.remove(c) != null) {
+                normalizationDirty = true;
+                brightnessStale = true;
+            }
         }
     }
 
@@ -176,6 +302,15 @@ public class SubImgCharMatcher {
         }
     }
 
+    /**
+     * Gets the rounding method.
+     *
+     * @return the rounding method ("up", "down", or "abs")
+     */
+    public String getRoundingMethod() {
+        return roundingMethod;
+    }
+
     /**
      * Gets the character set.
      *